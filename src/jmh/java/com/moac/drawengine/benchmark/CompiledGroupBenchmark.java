@@ -0,0 +1,69 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.CompiledGroup;
+import com.moac.drawengine.DrawFailureException;
+import com.moac.drawengine.IndexedDrawEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeated draws of one group, compiled once versus compiled on every draw.
+ * Run with -prof gc to compare allocation per draw.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledGroupBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    // Restrictions per member.
+    @Param({"0", "5"})
+    public int restrictions;
+
+    private IndexedDrawEngine mDrawEngine;
+    private Map<Long, Set<Long>> mMembers;
+    private CompiledGroup mGroup;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDrawEngine = new IndexedDrawEngine();
+        mMembers = Groups.random(size, restrictions, true, 42L);
+        mGroup = CompiledGroup.compile(mMembers);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object drawCompiled() throws DrawFailureException {
+        return mDrawEngine.generateDraw(mGroup);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object drawMembers() throws DrawFailureException {
+        return mDrawEngine.generateDraw(mMembers);
+    }
+}
@@ -0,0 +1,73 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.DrawEngine;
+import com.moac.drawengine.DrawFailureException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws of generated groups across restriction densities, comparing the engines
+ * {@link com.moac.drawengine.AdaptiveDrawEngine} chooses between with the
+ * choice it makes. Its time should be close to the fastest engine's for each
+ * size and density.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DensityBenchmark {
+
+    @Param({"BASIC", "INDEXED", "PROPAGATING", "MATCHING", "ADAPTIVE"})
+    public Engines engine;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    // The chance of each member restricting each other member.
+    @Param({"0.01", "0.1", "0.5", "0.9"})
+    public double density;
+
+    private DrawEngine mDrawEngine;
+    private Map<Long, Set<Long>> mMembers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (density > 0.5 && size > 100 && engine != Engines.MATCHING && engine != Engines.ADAPTIVE) {
+            // Backtracking thrashes on large, densely restricted groups.
+            throw new IllegalStateException(String.format("Skipped: %s is too slow for %d members at density %s",
+                    engine.name(), size, density));
+        }
+        mDrawEngine = engine.create();
+        mMembers = Groups.dense(size, density, 42L);
+    }
+
+    @Benchmark
+    public Object draw() {
+        try {
+            return mDrawEngine.generateDraw(mMembers);
+        } catch (DrawFailureException ex) {
+            return ex;
+        }
+    }
+}
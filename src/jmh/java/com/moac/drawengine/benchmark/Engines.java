@@ -0,0 +1,115 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.*;
+
+/**
+ * The DrawEngine implementations under benchmark.
+ *
+ * Add new implementations here and every benchmark picks them up; a JMH
+ * enum parameter runs all constants unless told otherwise.
+ */
+public enum Engines {
+
+    BASIC(10000, 10) {
+        public DrawEngine create() {
+            return new BasicDrawEngine();
+        }
+    },
+    RECURSIVE(1000, 10) {
+        public DrawEngine create() {
+            return new RecursiveDrawEngine();
+        }
+    },
+    ITERATIVE(Integer.MAX_VALUE, 10) {
+        public DrawEngine create() {
+            return new IterativeDrawEngine();
+        }
+    },
+    INDEXED(Integer.MAX_VALUE, 10) {
+        public DrawEngine create() {
+            return new IndexedDrawEngine();
+        }
+    },
+    PROPAGATING(Integer.MAX_VALUE, 10) {
+        public DrawEngine create() {
+            return new PropagatingDrawEngine();
+        }
+    },
+    PORTFOLIO(Integer.MAX_VALUE, 10) {
+        public DrawEngine create() {
+            return new PortfolioDrawEngine();
+        }
+    },
+    PARTITIONED(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new PartitionedDrawEngine();
+        }
+    },
+    UNIFORM(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new UniformDrawEngine();
+        }
+    },
+    CYCLE(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new CycleDrawEngine();
+        }
+    },
+    WEIGHTED(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new WeightedDrawEngine();
+        }
+    },
+    MATCHING(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new MatchingDrawEngine();
+        }
+    },
+    ADAPTIVE(Integer.MAX_VALUE, Integer.MAX_VALUE) {
+        public DrawEngine create() {
+            return new AdaptiveDrawEngine();
+        }
+    };
+
+    private final int mMaxPossibleSize;
+    private final int mMaxImpossibleSize;
+
+    /**
+     * @param maxPossibleSize   The largest possible draw that completes in reasonable time.
+     * @param maxImpossibleSize The largest impossible draw that completes in reasonable time;
+     *                          exhaustive backtracking is exponential here.
+     */
+    Engines(int maxPossibleSize, int maxImpossibleSize) {
+        mMaxPossibleSize = maxPossibleSize;
+        mMaxImpossibleSize = maxImpossibleSize;
+    }
+
+    public abstract DrawEngine create();
+
+    /**
+     * @throws IllegalStateException if the engine is known to be too slow for the input,
+     *                               which makes JMH skip the parameter combination.
+     */
+    public void checkSupported(int size, boolean possible) {
+        if (size > (possible ? mMaxPossibleSize : mMaxImpossibleSize)) {
+            throw new IllegalStateException(String.format("Skipped: %s is too slow for %s draws of %d members",
+                    name(), possible ? "possible" : "impossible", size));
+        }
+    }
+}
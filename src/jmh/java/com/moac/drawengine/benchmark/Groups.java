@@ -0,0 +1,72 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Generates members and restrictions mappings for benchmarks.
+ */
+public class Groups {
+
+    /**
+     * @param size         The number of members.
+     * @param restrictions The number of restrictions for each member, chosen at random.
+     * @param possible     If false, every member also restricts the first member,
+     *                     so no one can give to them.
+     * @param seed         Seed for choosing restrictions.
+     */
+    public static Map<Long, Set<Long>> random(int size, int restrictions, boolean possible, long seed) {
+        Random random = new Random(seed);
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>(size * 4 / 3 + 1);
+        for (int i = 1; i <= size; i++) {
+            Set<Long> restricted = new HashSet<Long>();
+            int count = Math.min(restrictions, size - 2);
+            while (restricted.size() < count) {
+                long pick = 1 + random.nextInt(size);
+                if (pick != i) {
+                    restricted.add(pick);
+                }
+            }
+            if (!possible && i != 1) {
+                restricted.add(1L);
+            }
+            members.put((long) i, restricted);
+        }
+        return members;
+    }
+
+    /**
+     * @param size    The number of members.
+     * @param density The chance of each member restricting each other member.
+     * @param seed    Seed for choosing restrictions.
+     */
+    public static Map<Long, Set<Long>> dense(int size, double density, long seed) {
+        Random random = new Random(seed);
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>(size * 4 / 3 + 1);
+        for (long giver = 1; giver <= size; giver++) {
+            Set<Long> restricted = new HashSet<Long>();
+            for (long receiver = 1; receiver <= size; receiver++) {
+                if (receiver != giver && random.nextDouble() < density) {
+                    restricted.add(receiver);
+                }
+            }
+            members.put(giver, restricted);
+        }
+        return members;
+    }
+}
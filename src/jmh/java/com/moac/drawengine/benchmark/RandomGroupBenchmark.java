@@ -0,0 +1,70 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.DrawEngine;
+import com.moac.drawengine.DrawFailureException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws of generated groups across sizes, restriction densities and possible
+ * versus impossible inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomGroupBenchmark {
+
+    @Param
+    public Engines engine;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int size;
+
+    // Restrictions per member.
+    @Param({"0", "5"})
+    public int restrictions;
+
+    @Param({"true", "false"})
+    public boolean possible;
+
+    private DrawEngine mDrawEngine;
+    private Map<Long, Set<Long>> mMembers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine.checkSupported(size, possible);
+        mDrawEngine = engine.create();
+        mMembers = Groups.random(size, restrictions, possible, 42L);
+    }
+
+    @Benchmark
+    public Object draw() {
+        try {
+            return mDrawEngine.generateDraw(mMembers);
+        } catch (DrawFailureException ex) {
+            return ex;
+        }
+    }
+}
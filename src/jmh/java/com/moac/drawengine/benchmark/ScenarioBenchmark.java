@@ -0,0 +1,70 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.DrawEngine;
+import com.moac.drawengine.DrawFailureException;
+import com.moac.drawengine.test.TestDataUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws of the scenario files used by the tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScenarioBenchmark {
+
+    @Param
+    public Engines engine;
+
+    @Param({"possible_simple.txt",
+            "possible_complex.txt",
+            "possible_single_path.txt",
+            "pauls_test.txt",
+            "ignore_self_restrict.txt",
+            "impossible_not_symmetrical.txt",
+            "impossible_symmetrical.txt",
+            "impossible_too_restricted_simple.txt",
+            "impossible_too_restricted_complex.txt"})
+    public String scenario;
+
+    private DrawEngine mDrawEngine;
+    private Map<Long, Set<Long>> mMembers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mDrawEngine = engine.create();
+        mMembers = TestDataUtils.readTestDataFile(scenario);
+    }
+
+    @Benchmark
+    public Object draw() {
+        try {
+            return mDrawEngine.generateDraw(mMembers);
+        } catch (DrawFailureException ex) {
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.moac.drawengine.benchmark;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.moac.drawengine.DrawEngine;
+import com.moac.drawengine.DrawFailureException;
+
+import java.util.*;
+
+/**
+ * Measures how far each engine's draws are from uniform over all the possible
+ * draws of small groups, and how many draws it makes per second.
+ *
+ * Distance is the total variation distance between the observed frequencies and
+ * uniform: half the sum of the absolute differences, from 0 (uniform) to 1. Even
+ * a perfect sampler shows some distance from a finite number of draws, so an exact
+ * uniform sampler over the enumerated draws is reported first as the baseline.
+ * Engines drawing only some of the possible draws, such as single loops, are
+ * far from uniform by design.
+ *
+ * Run with (the argument is the draws per engine and group):
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.moac.drawengine.benchmark.UniformityReport -Djmh.args=20000
+ * </pre>
+ */
+public class UniformityReport {
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        Map<String, Map<Long, Set<Long>>> groups = new LinkedHashMap<String, Map<Long, Set<Long>>>();
+        groups.put("6 unrestricted", Groups.random(6, 0, true, 1L));
+        groups.put("6 couples", couples(3));
+        groups.put("7 random restrictions", Groups.random(7, 2, true, 1L));
+
+        for (Map.Entry<String, Map<Long, Set<Long>>> group : groups.entrySet()) {
+            Map<Long, Set<Long>> members = group.getValue();
+            List<Map<Long, Long>> possible = possibleDraws(members);
+            System.out.printf("%s: %d possible draws, %d draws each%n", group.getKey(), possible.size(), samples);
+            System.out.printf("  %-12s %10s %14s%n", "engine", "distance", "draws/s");
+
+            Random random = new Random(1);
+            Map<Map<Long, Long>, Integer> counts = new HashMap<Map<Long, Long>, Integer>();
+            for (int i = 0; i < samples; i++) {
+                count(counts, possible.get(random.nextInt(possible.size())));
+            }
+            System.out.printf("  %-12s %10.4f %14s%n", "(exact)", distance(counts, possible.size(), samples), "-");
+
+            for (Engines engine : Engines.values()) {
+                DrawEngine drawEngine = engine.create();
+                counts.clear();
+                long start = System.nanoTime();
+                try {
+                    for (int i = 0; i < samples; i++) {
+                        count(counts, drawEngine.generateDraw(members));
+                    }
+                } catch (DrawFailureException ex) {
+                    // Such as a single loop draw of a group without one.
+                    System.out.printf("  %-12s %s%n", engine.name(), ex.getMessage());
+                    continue;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("  %-12s %10.4f %14.0f%n", engine.name(), distance(counts, possible.size(), samples),
+                        samples / seconds);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Pairs of members restricted from giving to each other.
+     */
+    private static Map<Long, Set<Long>> couples(int pairs) {
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>();
+        for (long i = 1; i <= 2 * pairs; i++) {
+            members.put(i, new HashSet<Long>(Collections.singleton(i % 2 == 1 ? i + 1 : i - 1)));
+        }
+        return members;
+    }
+
+    private static void count(Map<Map<Long, Long>, Integer> counts, Map<Long, Long> draw) {
+        Integer count = counts.get(draw);
+        counts.put(draw, count == null ? 1 : count + 1);
+    }
+
+    private static double distance(Map<Map<Long, Long>, Integer> counts, int possible, int samples) {
+        double uniform = 1.0 / possible;
+        double sum = 0;
+        for (int count : counts.values()) {
+            sum += Math.abs((double) count / samples - uniform);
+        }
+        // Possible draws never drawn.
+        sum += (possible - counts.size()) * uniform;
+        return sum / 2;
+    }
+
+    /**
+     * Every valid draw, by brute force over the permutations of the members.
+     */
+    private static List<Map<Long, Long>> possibleDraws(Map<Long, Set<Long>> members) {
+        List<Long> givers = new ArrayList<Long>(members.keySet());
+        List<Map<Long, Long>> draws = new ArrayList<Map<Long, Long>>();
+        permute(members, givers, new ArrayList<Long>(givers), 0, draws);
+        return draws;
+    }
+
+    private static void permute(Map<Long, Set<Long>> members, List<Long> givers, List<Long> receivers, int depth,
+                                List<Map<Long, Long>> draws) {
+        if (depth == receivers.size()) {
+            Map<Long, Long> draw = new HashMap<Long, Long>();
+            for (int i = 0; i < givers.size(); i++) {
+                draw.put(givers.get(i), receivers.get(i));
+            }
+            draws.add(draw);
+            return;
+        }
+        for (int i = depth; i < receivers.size(); i++) {
+            Collections.swap(receivers, depth, i);
+            Long giver = givers.get(depth);
+            Long receiver = receivers.get(depth);
+            if (!giver.equals(receiver) && !members.get(giver).contains(receiver)) {
+                permute(members, givers, receivers, depth + 1, draws);
+            }
+            Collections.swap(receivers, depth, i);
+        }
+    }
+}
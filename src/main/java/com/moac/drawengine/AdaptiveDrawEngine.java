@@ -0,0 +1,329 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A DrawEngine that profiles each group and draws it with whichever strategy
+ * suits it, so callers needn't choose between engines by group size and
+ * restriction density.
+ *
+ * The profile costs one pass over the compiled group: the member count, the
+ * restriction density, and the members forced to a single receiver or giver.
+ * Members left with no receiver or giver, or two forced onto the same member,
+ * make the draw impossible, and it fails at once. Densely restricted or forced
+ * groups are drawn by {@link Matching}, which is polynomial whatever the group.
+ * Others are searched as by {@link BasicDrawEngine}, which is fastest on them,
+ * but with a budget of backtracks: a search that stops making progress falls
+ * back to the matching, which finishes the draw or explains why it can't be.
+ *
+ * The route taken by each draw is counted, and reported to the DrawListener as
+ * part of the engine name, such as "AdaptiveDrawEngine/SEARCH".
+ */
+public class AdaptiveDrawEngine implements DrawEngine {
+
+    /**
+     * The strategies a draw can be routed to.
+     */
+    public enum Route {
+        /**
+         * The profile showed the draw is impossible.
+         */
+        REJECTED,
+        /**
+         * Drawn by a matching, the group being dense or having forced members.
+         */
+        MATCHING,
+        /**
+         * Drawn by a budgeted backtracking search.
+         */
+        SEARCH,
+        /**
+         * The search ran out of budget or proved the draw impossible, and a matching
+         * finished the draw or explained the failure.
+         */
+        FALLBACK
+    }
+
+    // Restriction density at and above which searches start to thrash.
+    static final double DEFAULT_DENSITY_THRESHOLD = 0.5;
+
+    // Backtracks per step of the search's Luby restart sequence.
+    private static final long RESTART_UNIT = 128;
+
+    // Backtracks allowed per member, plus a minimum, before falling back.
+    private static final long BACKTRACKS_PER_MEMBER = 4;
+    private static final long MIN_BACKTRACKS = 4096;
+
+    private final double mDensityThreshold;
+    private final RandomSource mRandomSource;
+    private final RestartPolicy mRestartPolicy = RestartPolicy.luby(RESTART_UNIT);
+    private final AtomicLongArray mRoutes = new AtomicLongArray(Route.values().length);
+    private volatile DrawListener mListener;
+
+    public AdaptiveDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public AdaptiveDrawEngine(RandomSource randomSource) {
+        this(DEFAULT_DENSITY_THRESHOLD, randomSource);
+    }
+
+    /**
+     * @param densityThreshold The fraction of possible pairs restricted at and above which
+     *                         groups are drawn by matching rather than search.
+     * @param randomSource     Provides the randomness for each draw.
+     */
+    public AdaptiveDrawEngine(double densityThreshold, RandomSource randomSource) {
+        if (!(densityThreshold >= 0 && densityThreshold <= 1) || randomSource == null) {
+            throw new IllegalArgumentException("A density threshold from 0 to 1 and a random source are required.");
+        }
+        mDensityThreshold = densityThreshold;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return The number of draws, successful or not, that took the route.
+     */
+    public long getRouteCount(Route route) {
+        return mRoutes.get(route.ordinal());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        Profile profile = Profile.of(group);
+        Route route = profile.route(mDensityThreshold);
+        probe.prepared();
+
+        SearchCounters counters = new SearchCounters();
+        int[] assignments = null;
+        if (route == Route.SEARCH) {
+            assignments = search(group, random, counters);
+            if (assignments == null) {
+                route = Route.FALLBACK;
+            }
+        }
+        mRoutes.incrementAndGet(route.ordinal());
+        probe.route(route.name());
+
+        if (route == Route.REJECTED) {
+            probe.finish(counters, false);
+            throw new DrawFailureException(profile.mRejection);
+        }
+        if (assignments == null) {
+            Matching matching = Matching.random(group, random, counters);
+            if (!matching.isPerfect()) {
+                probe.finish(counters, false);
+                throw new DrawFailureException(matching.describeBlockingSet());
+            }
+            assignments = matching.assignments();
+        }
+        probe.searched();
+
+        int n = group.size();
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * The {@link BasicDrawEngine} search, restarting with Luby budgets until a total
+     * budget of backtracks runs out.
+     *
+     * @return The receiver of each giver, or null if the search gave up.
+     * @throws DrawFailureException If the draw was cancelled or ran past its deadline.
+     */
+    private int[] search(CompiledGroup group, FastRandom random, SearchCounters counters)
+            throws DrawFailureException {
+        int n = group.size();
+        int[] givers = IndexedDrawEngine.sortByRestrictions(group);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        SparseSet available = new SparseSet(order);
+        int[] assignments = new int[n];
+        int[] positions = new int[n];
+        int[] cursors = new int[n];
+        int[] failures = new int[n];
+        DrawCancellation cancellation = DrawCancellation.current();
+
+        long remaining = Math.max(MIN_BACKTRACKS, BACKTRACKS_PER_MEMBER * n);
+        for (int attempt = 0; remaining > 0; attempt++) {
+            IndexedDrawEngine.shuffle(order, random);
+            available.reset(order);
+            if (attempt > 0) {
+                counters.restart();
+            }
+            long backtracks = counters.mBacktracks;
+            int outcome = BasicDrawEngine.search(group, givers, available, assignments, positions, cursors,
+                    failures, Math.min(mRestartPolicy.budget(attempt), remaining), cancellation, counters);
+            if (cancellation != null && cancellation.isStopped()) {
+                throw cancellation.failure(this, n, random.getSeed(), counters);
+            }
+            if (outcome == IndexedDrawEngine.FOUND) {
+                return assignments;
+            }
+            if (outcome == IndexedDrawEngine.EXHAUSTED) {
+                return null;
+            }
+            remaining -= counters.mBacktracks - backtracks;
+        }
+        return null;
+    }
+
+    /**
+     * What one pass over a compiled group shows about it.
+     */
+    static final class Profile {
+
+        // The fraction of possible pairs restricted.
+        final double mDensity;
+        // Givers with only one receiver, and receivers with only one giver.
+        final int mForced;
+        // Why the draw is impossible, or null if it may be possible.
+        final String mRejection;
+
+        private Profile(int members, long restrictions, int forced, String rejection) {
+            mDensity = (double) restrictions / ((double) members * (members - 1));
+            mForced = forced;
+            mRejection = rejection;
+        }
+
+        static Profile of(CompiledGroup group) {
+            int n = group.size();
+            long restrictions = 0;
+            int forced = 0;
+            String rejection = null;
+
+            // The giver forced to each receiver, and the receiver forced to each giver.
+            int[] forcedGivers = new int[n];
+            int[] forcedReceivers = new int[n];
+            for (int i = 0; i < n; i++) {
+                forcedGivers[i] = -1;
+                forcedReceivers[i] = -1;
+            }
+            for (int member = 0; member < n && rejection == null; member++) {
+                int restrictionCount = group.restrictionCount(member);
+                restrictions += restrictionCount;
+                if (restrictionCount == n - 1) {
+                    rejection = "Member " + group.id(member) + " can't give to anyone.";
+                } else if (restrictionCount == n - 2) {
+                    forced++;
+                    int receiver = onlyReceiver(group, member);
+                    if (forcedGivers[receiver] >= 0) {
+                        rejection = "Members " + group.id(forcedGivers[receiver]) + " and " + group.id(member)
+                                + " can only give to member " + group.id(receiver) + ".";
+                    }
+                    forcedGivers[receiver] = member;
+                }
+
+                int restrictorCount = group.restrictorCount(member);
+                if (rejection != null) {
+                    break;
+                } else if (restrictorCount == n - 1) {
+                    rejection = "No one can give to member " + group.id(member) + ".";
+                } else if (restrictorCount == n - 2) {
+                    forced++;
+                    int giver = onlyGiver(group, member);
+                    if (forcedReceivers[giver] >= 0) {
+                        rejection = "Members " + group.id(forcedReceivers[giver]) + " and " + group.id(member)
+                                + " can only receive from member " + group.id(giver) + ".";
+                    }
+                    forcedReceivers[giver] = member;
+                }
+            }
+            return new Profile(n, restrictions, forced, rejection);
+        }
+
+        Route route(double densityThreshold) {
+            if (mRejection != null) {
+                return Route.REJECTED;
+            }
+            return mForced > 0 || mDensity >= densityThreshold ? Route.MATCHING : Route.SEARCH;
+        }
+
+        /**
+         * @return The one member, other than themselves, the giver doesn't restrict.
+         */
+        private static int onlyReceiver(CompiledGroup group, int giver) {
+            int count = group.restrictionCount(giver);
+            int i = 0;
+            for (int receiver = 0; ; receiver++) {
+                if (receiver == giver) {
+                    continue;
+                }
+                if (i < count && group.restriction(giver, i) == receiver) {
+                    i++;
+                } else {
+                    return receiver;
+                }
+            }
+        }
+
+        /**
+         * @return The one member, other than themselves, who doesn't restrict the receiver.
+         */
+        private static int onlyGiver(CompiledGroup group, int receiver) {
+            int count = group.restrictorCount(receiver);
+            int i = 0;
+            for (int giver = 0; ; giver++) {
+                if (giver == receiver) {
+                    continue;
+                }
+                if (i < count && group.restrictor(receiver, i) == giver) {
+                    i++;
+                } else {
+                    return giver;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Makes draws with another DrawEngine on an executor, returning a CompletableFuture
+ * that can be cancelled or given a deadline.
+ *
+ * The {@link BasicDrawEngine} and {@link RecursiveDrawEngine} searches check for
+ * cancellation as they go, so stop soon after the future is cancelled or its deadline
+ * passes; a draw that misses its deadline fails with a {@link DrawTimeoutException}
+ * carrying the statistics of the search so far. Other engines run to completion in
+ * the background, but their futures still fail at the deadline.
+ */
+public class AsyncDrawEngine implements DrawEngine {
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "async-draw-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+    private final DrawEngine mEngine;
+    private final Executor mExecutor;
+    private final long mTimeoutNanos;
+
+    /**
+     * Draws on a shared pool of daemon threads, with no deadline.
+     */
+    public AsyncDrawEngine(DrawEngine engine) {
+        this(engine, DEFAULT_EXECUTOR, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param engine   The engine to draw with.
+     * @param executor Runs the draws, e.g. a thread pool, or a virtual thread per task
+     *                 executor on Java 21 and later.
+     * @param timeout  The time allowed for each draw, including time waiting for the
+     *                 executor, or zero for no limit.
+     * @param unit     The unit of the timeout.
+     */
+    public AsyncDrawEngine(DrawEngine engine, Executor executor, long timeout, TimeUnit unit) {
+        if (engine == null || executor == null || timeout < 0 || unit == null) {
+            throw new IllegalArgumentException("Engine, executor and a non-negative timeout are required.");
+        }
+        mEngine = engine;
+        mExecutor = executor;
+        mTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Starts a draw with the default timeout.
+     *
+     * @see #generateDrawAsync(Map, long, TimeUnit)
+     */
+    public CompletableFuture<Map<Long, Long>> generateDrawAsync(Map<Long, Set<Long>> members) {
+        return generateDrawAsync(members, mTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Starts a draw.
+     *
+     * @param members A mapping between the members in the draw and their associated restrictions.
+     * @param timeout The time allowed for this draw, or zero for no limit.
+     * @param unit    The unit of the timeout.
+     * @return The draw, failing with the engine's DrawFailureException, or a
+     * DrawTimeoutException if the deadline passes first. Cancelling it stops the search.
+     */
+    public CompletableFuture<Map<Long, Long>> generateDrawAsync(final Map<Long, Set<Long>> members,
+                                                                long timeout, TimeUnit unit) {
+        if (timeout < 0 || unit == null) {
+            throw new IllegalArgumentException("A non-negative timeout is required.");
+        }
+        final CompletableFuture<Map<Long, Long>> future = new CompletableFuture<Map<Long, Long>>();
+        final DrawCancellation cancellation = new DrawCancellation(unit.toNanos(timeout));
+
+        final ScheduledFuture<?> timer = timeout == 0 ? null : TIMER.schedule(new Runnable() {
+            public void run() {
+                // A search that polls will fail with its own statistics; don't beat it to it.
+                if (!cancellation.isPolled()) {
+                    future.completeExceptionally(cancellation.timeout(mEngine.getClass().getSimpleName(),
+                            members == null ? 0 : members.size(), 0, new SearchCounters()));
+                }
+            }
+        }, timeout, unit);
+
+        // However the future completes, the search has no more reason to run.
+        future.whenComplete(new BiConsumer<Map<Long, Long>, Throwable>() {
+            public void accept(Map<Long, Long> draw, Throwable ex) {
+                cancellation.cancel();
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+        });
+
+        try {
+            mExecutor.execute(new Runnable() {
+                public void run() {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    DrawCancellation previous = cancellation.enter();
+                    try {
+                        future.complete(mEngine.generateDraw(members));
+                    } catch (Throwable ex) {
+                        future.completeExceptionally(ex);
+                    } finally {
+                        DrawCancellation.exit(previous);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+        CompletableFuture<Map<Long, Long>> future = generateDrawAsync(members);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new DrawFailureException("Interrupted while drawing.");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof DrawFailureException) {
+                throw (DrawFailureException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "async-draw-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -21,6 +21,49 @@ import java.util.*;
 
 public class BasicDrawEngine implements DrawEngine {
 
+    // Backtracks per step of the default Luby restart sequence.
+    private static final long DEFAULT_RESTART_UNIT = 128;
+
+    private final RestartPolicy mRestartPolicy;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    /**
+     * Restarts with Luby sequence backtrack budgets.
+     */
+    public BasicDrawEngine() {
+        this(RestartPolicy.luby(DEFAULT_RESTART_UNIT));
+    }
+
+    /**
+     * @param restartPolicy The backtracks allowed for each attempt before restarting
+     *                      with a fresh shuffle. Use {@link RestartPolicy#never()} to
+     *                      search without restarts.
+     */
+    public BasicDrawEngine(RestartPolicy restartPolicy) {
+        this(restartPolicy, RandomSource.unseeded());
+    }
+
+    /**
+     * @param restartPolicy The backtracks allowed for each attempt before restarting
+     *                      with a fresh shuffle.
+     * @param randomSource  Provides the randomness for each draw.
+     */
+    public BasicDrawEngine(RestartPolicy restartPolicy, RandomSource randomSource) {
+        if (restartPolicy == null || randomSource == null) {
+            throw new IllegalArgumentException("Restart policy and random source are required.");
+        }
+        mRestartPolicy = restartPolicy;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -31,102 +74,144 @@ public class BasicDrawEngine implements DrawEngine {
     public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
             throws DrawFailureException {
 
-        /*
-         * TODO Would like minimise some of the creation of new ArrayLists
-         * from the Sets. In fact, I would like to rewrite the whole thing..
-         */
-
         // Can't draw zero or single length
         if (members == null || members.size() < 2) {
             throw new DrawFailureException("Can't have less than two members.");
         }
 
-        // Initialise to desired size (performance)
-        Map<Long, Long> result = new HashMap<Long, Long>(members.size());
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
 
-        // Shuffle the one input list
-        List<Long> randomMembers = new ArrayList<Long>(members.keySet());
-        Collections.shuffle(randomMembers, new Random());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
 
         // Sort based on number of restrictions.
         // Most restrictive first to minimise rollbacks.
-        List<Long> sortedMembers = new ArrayList<Long>(members.keySet());
-        Collections.sort(sortedMembers, new RestrictionsComparator(members));
-
-        Map<Long, Set<Long>> failedPaths = new HashMap<Long, Set<Long>>();
-
-        int rowIndex = 0;
-        // If the index goes back less than 0 ... we won't find anything.
-        while (rowIndex >= 0 && rowIndex < sortedMembers.size()) {
+        int[] givers = IndexedDrawEngine.sortByRestrictions(group);
+
+        // The receivers not yet picked, in a random order. Picks swap out of the
+        // dense array and rollbacks swap back in, so each depth sees the order it
+        // left and resumes from its cursor: receivers before the cursor are its
+        // failed paths.
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        SparseSet available = new SparseSet(order);
+        int[] assignments = new int[n];
+        int[] positions = new int[n];
+        int[] cursors = new int[n];
+        int[] failures = new int[n];
+        probe.prepared();
+        SearchCounters counters = new SearchCounters();
+        DrawCancellation cancellation = DrawCancellation.current();
+
+        // A bad shuffle can trap the search in a long run of rollbacks, so each attempt
+        // is given a budget of rollbacks before starting again with a fresh shuffle.
+        // Budgets grow, so eventually an attempt can search exhaustively.
+        for (int attempt = 0; ; attempt++) {
+
+            // Shuffle the one input list
+            IndexedDrawEngine.shuffle(order, random);
+            available.reset(order);
+            if (attempt > 0) {
+                counters.restart();
+            }
 
-            Long from = sortedMembers.get(rowIndex);
-            Long to = null;
+            int outcome = search(group, givers, available, assignments, positions, cursors, failures,
+                    mRestartPolicy.budget(attempt), cancellation, counters);
 
-            // If there is an existing assignment for a member, then
-            // it's because we have done a rollback to here - so add this value to the
-            // list of failed paths for this node.
-            Long lastfailedPath = result.remove(from);
+            // Stop if the draw was cancelled or ran past its deadline.
+            if (cancellation != null && cancellation.isStopped()) {
+                probe.finish(counters, false);
+                throw cancellation.failure(this, members.size(), random.getSeed(), counters);
+            }
 
-            Set<Long> nodeFailedPaths = failedPaths.get(from);
-            if (lastfailedPath != null) {
-                if (nodeFailedPaths == null) {
-                    nodeFailedPaths = new HashSet<Long>();
+            if (outcome == IndexedDrawEngine.FOUND) {
+                probe.searched();
+                // Initialise to desired size (performance)
+                Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+                for (int giver = 0; giver < n; giver++) {
+                    result.put(group.id(giver), group.id(assignments[giver]));
                 }
-                nodeFailedPaths.add(lastfailedPath);
-                failedPaths.put(from, nodeFailedPaths);
+                probe.finish(counters, true);
+                return result;
+            } else if (outcome == IndexedDrawEngine.EXHAUSTED) {
+                probe.finish(counters, false);
+                throw new DrawFailureException();
             }
+        }
+    }
 
-            // Try to find an allowed match - pick from the randomised list.
-            for (Long pick : randomMembers) {
-
-				/*
-                 * 1. Can't pick self
-                 * 2. Can't be restricted
-                 * 3. Can't pick if already picked
-                 * 4.Can't pick a failed path for this node.
-				 */
-                if (!(pick.equals(from) || members.get(from).contains(pick) || result.containsValue(pick)
-                        || (nodeFailedPaths != null && nodeFailedPaths.contains(pick)))) {
+    /**
+     * One attempt of the search, assigning each of the givers, in order, a receiver
+     * from those available, tried in the order of its dense array.
+     *
+     * @param available     The receivers, all of them members.
+     * @param assignments   Populated with the receiver index for each giver index.
+     * @param positions     Search space of the group size, overwritten.
+     * @param cursors       Search space of the group size, overwritten.
+     * @param failures      Search space of the group size, overwritten.
+     * @param maxBacktracks The rollbacks allowed before giving up.
+     * @param cancellation  Polled at each step, the search gives up once stopped. May be null.
+     * @return {@link IndexedDrawEngine#FOUND} if all givers were assigned, {@link IndexedDrawEngine#EXHAUSTED}
+     * if the search completed without finding an assignment or {@link IndexedDrawEngine#ABORTED} if it gave up.
+     */
+    static int search(CompiledGroup group, int[] givers, SparseSet available, int[] assignments,
+                      int[] positions, int[] cursors, int[] failures, long maxBacktracks,
+                      DrawCancellation cancellation, SearchCounters counters) {
+        int n = givers.length;
+        long rollbacks = 0;
+        int depth = 0;
+        cursors[0] = 0;
+        failures[0] = 0;
+        // If the depth goes back less than 0 ... we won't find anything.
+        while (depth >= 0 && depth < n) {
+
+            if (cancellation != null && cancellation.poll()) {
+                return IndexedDrawEngine.ABORTED;
+            }
+
+            // Try to find an allowed match - the first from the cursor that isn't
+            // self or restricted; everything still available is unpicked.
+            int from = givers[depth];
+            int to = -1;
+            int size = available.size();
+            for (int i = cursors[depth]; i < size; i++) {
+                int pick = available.get(i);
+                if (!group.isExcluded(from, pick)) {
                     to = pick;
+                    cursors[depth] = i + 1;
                     break;
                 }
             }
 
-            if (to == null) {
-                // Go back to previous node and choose differently.
+            if (to < 0) {
+                // Go back to previous node and choose differently, making its
+                // last pick one of its failed paths.
+                depth--;
+                counters.backtrack();
+                if (depth >= 0) {
+                    available.restore(assignments[givers[depth]], positions[depth]);
+                    counters.failedPaths(++failures[depth]);
+                }
 
-                // Clear any failed paths from current node.
-                if (nodeFailedPaths != null) {
-                    nodeFailedPaths.clear();
+                // Out of budget, give up.
+                if (++rollbacks > maxBacktracks && depth >= 0) {
+                    return IndexedDrawEngine.ABORTED;
                 }
-                rowIndex--;
             } else {
                 // Set path and visit next node.
-                result.put(from, to);
-                rowIndex++;
+                assignments[from] = to;
+                positions[depth] = available.remove(to);
+                depth++;
+                if (depth < n) {
+                    cursors[depth] = 0;
+                    failures[depth] = 0;
+                }
+                counters.node();
             }
         }
-
-        if (result.size() == members.size()) {
-            return result;
-        } else {
-            throw new DrawFailureException();
-        }
-    }
-
-    /**
-     * Orders members in a descending order of restrictedness.
-     */
-    private static class RestrictionsComparator implements Comparator<Long> {
-        private Map<Long, Set<Long>> mRestrictionsMap;
-
-        RestrictionsComparator(Map<Long, Set<Long>> restrictions) {
-            mRestrictionsMap = restrictions;
-        }
-
-        public int compare(Long l1, Long l2) {
-            return mRestrictionsMap.get(l2).size()
-                    - mRestrictionsMap.get(l1).size();
-        }
+        return depth == n ? IndexedDrawEngine.FOUND : IndexedDrawEngine.EXHAUSTED;
     }
 }
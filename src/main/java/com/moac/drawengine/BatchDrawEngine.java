@@ -0,0 +1,159 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Draws many independent groups in parallel.
+ *
+ * Groups are sorted largest first and spread across an executor, so the largest
+ * draws start straight away while smaller ones fill in around them. Small groups
+ * are chunked together so that each task carries a worthwhile amount of work.
+ * A failed draw, or one that throws an unexpected exception, is recorded in its
+ * group's {@link DrawOutcome} and doesn't stop the rest of the batch.
+ *
+ * The DrawEngine is shared by all the tasks; the implementations in this package
+ * keep no state between draws so are safe to share.
+ */
+public class BatchDrawEngine {
+
+    // Tasks per thread to aim for when chunking small groups.
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final DrawEngine mEngine;
+    private final ExecutorService mExecutor;
+    private final int mParallelism;
+
+    /**
+     * Draws on the common fork-join pool.
+     */
+    public BatchDrawEngine(DrawEngine engine) {
+        this(engine, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param engine      The engine to draw each group with.
+     * @param executor    Runs the draws, e.g. a fork-join pool or a virtual thread per task executor.
+     * @param parallelism The number of draws the executor is expected to run at once,
+     *                    used to size chunks of small groups.
+     */
+    public BatchDrawEngine(DrawEngine engine, ExecutorService executor, int parallelism) {
+        if (engine == null || executor == null || parallelism < 1) {
+            throw new IllegalArgumentException("Engine and executor are required, with parallelism of at least one.");
+        }
+        mEngine = engine;
+        mExecutor = executor;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param groups The groups to draw, each a mapping between the members in the draw
+     *               and their associated restrictions.
+     * @return The outcome of each group's draw, in the iteration order of groups.
+     * @throws InterruptedException If interrupted while waiting for the draws to complete.
+     */
+    public <K> Map<K, DrawOutcome> drawAll(Map<K, Map<Long, Set<Long>>> groups) throws InterruptedException {
+        final List<Map.Entry<K, Map<Long, Set<Long>>>> entries =
+                new ArrayList<Map.Entry<K, Map<Long, Set<Long>>>>(groups.entrySet());
+
+        // Positions in entries, largest group first.
+        Integer[] sorted = new Integer[entries.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return weight(entries.get(i2).getValue()) - weight(entries.get(i1).getValue());
+            }
+        });
+
+        long total = 0;
+        for (Map.Entry<K, Map<Long, Set<Long>>> entry : entries) {
+            total += weight(entry.getValue());
+        }
+        long chunkWeight = Math.max(1, total / ((long) mParallelism * TASKS_PER_THREAD));
+
+        // By position rather than key, as keys may be null.
+        final DrawOutcome[] outcomes = new DrawOutcome[entries.size()];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int start = 0;
+        while (start < sorted.length) {
+            long weight = 0;
+            int end = start;
+            while (end < sorted.length && (end == start || weight < chunkWeight)) {
+                weight += weight(entries.get(sorted[end++]).getValue());
+            }
+            final List<Integer> chunk = Arrays.asList(sorted).subList(start, end);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int position : chunk) {
+                        outcomes[position] = draw(entries.get(position).getValue());
+                    }
+                    return null;
+                }
+            });
+            start = end;
+        }
+
+        for (Future<Void> future : mExecutor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        Map<K, DrawOutcome> result = new LinkedHashMap<K, DrawOutcome>(groups.size() * 4 / 3 + 1);
+        for (int i = 0; i < outcomes.length; i++) {
+            result.put(entries.get(i).getKey(), outcomes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Draws one group, recording any exception, such as from a malformed group, as its failure.
+     * So is a stack overflow, as a recursive engine's on a large group. Other errors of the
+     * virtual machine, such as running out of memory, still stop the batch.
+     */
+    private DrawOutcome draw(Map<Long, Set<Long>> members) {
+        try {
+            return DrawOutcome.success(mEngine.generateDraw(members));
+        } catch (DrawFailureException ex) {
+            return DrawOutcome.failure(ex);
+        } catch (RuntimeException ex) {
+            return DrawOutcome.failure(new DrawFailureException("Draw failed unexpectedly: " + ex, ex));
+        } catch (StackOverflowError ex) {
+            return DrawOutcome.failure(new DrawFailureException("Draw failed unexpectedly: " + ex, ex));
+        } catch (VirtualMachineError ex) {
+            throw ex;
+        } catch (Error ex) {
+            return DrawOutcome.failure(new DrawFailureException("Draw failed unexpectedly: " + ex, ex));
+        }
+    }
+
+    /**
+     * @return An estimate of the work to draw the group.
+     */
+    private static int weight(Map<Long, Set<Long>> members) {
+        return members == null ? 1 : members.size() + 1;
+    }
+}
@@ -0,0 +1,262 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps another DrawEngine, remembering what it learns about each group so repeat
+ * draws of the same group, such as retries, duplicate submissions or the same family
+ * from year to year, skip the work.
+ *
+ * Groups are keyed by a fingerprint of their canonical form: members and restrictions
+ * in ascending order, without self restrictions or restrictions on non-members, so
+ * the order of the input maps and sets doesn't matter. Each group's entry holds
+ * whether it can be drawn, with an explanation if not, so impossible groups fail
+ * without a search. Engines that can draw a {@link CompiledGroup}, the
+ * {@link IndexedDrawEngine} and the {@link MatchingDrawEngine}, also reuse the
+ * compiled group. Optionally the first draw of a group is kept and returned again,
+ * so a retried request gets the same draw.
+ *
+ * Entries are evicted least recently used first. A cached compiled group of up to
+ * {@value CompiledGroup#MAX_MATRIX_SIZE} members holds a restriction bit matrix of
+ * n^2 / 8 bytes, which should be allowed for when choosing the capacity.
+ */
+public class CachingDrawEngine implements DrawEngine {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final DrawEngine mEngine;
+    private final boolean mCacheResults;
+    private final Map<GroupKey, CachedGroup> mEntries;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    /**
+     * Caches up to 1024 groups, but not their draws.
+     */
+    public CachingDrawEngine(DrawEngine engine) {
+        this(engine, DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * @param engine       The engine to draw with.
+     * @param capacity     The most groups to remember.
+     * @param cacheResults true to return the same draw every time a group is drawn,
+     *                     rather than a fresh random draw.
+     */
+    public CachingDrawEngine(DrawEngine engine, final int capacity, boolean cacheResults) {
+        if (engine == null || capacity < 1) {
+            throw new IllegalArgumentException("Engine and a capacity of at least one are required.");
+        }
+        mEngine = engine;
+        mCacheResults = cacheResults;
+        mEntries = new LinkedHashMap<GroupKey, CachedGroup>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GroupKey, CachedGroup> eldest) {
+                if (size() > capacity) {
+                    mEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        CachedGroup entry = lookup(members);
+        if (!entry.mGroup.isFeasible()) {
+            throw new DrawFailureException(checkFeasibility(entry).toString());
+        }
+        Map<Long, Long> draw = entry.mDraw;
+        if (draw == null) {
+            if (mEngine instanceof CompiledDrawEngine) {
+                draw = new HashMap<Long, Long>(((CompiledDrawEngine) mEngine).generateDraw(entry.mGroup).asMap());
+            } else {
+                draw = mEngine.generateDraw(members);
+            }
+            if (!mCacheResults) {
+                return draw;
+            }
+            // Racing draws of the same group keep the first.
+            synchronized (entry) {
+                if (entry.mDraw == null) {
+                    entry.mDraw = new HashMap<Long, Long>(draw);
+                }
+                draw = entry.mDraw;
+            }
+        }
+        return new HashMap<Long, Long>(draw);
+    }
+
+    /**
+     * @param members A mapping between the members in the draw and their associated restrictions.
+     * @return Whether the members can be drawn, and if not why, from the cache if possible.
+     * Counts as a hit or a miss.
+     * @throws IllegalArgumentException If the members are null.
+     */
+    public Feasibility checkFeasibility(Map<Long, Set<Long>> members) {
+        if (members == null) {
+            throw new IllegalArgumentException("Members are required.");
+        }
+        return checkFeasibility(lookup(members));
+    }
+
+    private static Feasibility checkFeasibility(CachedGroup entry) {
+        synchronized (entry) {
+            if (entry.mFeasibility == null) {
+                entry.mFeasibility = Feasibility.check(entry.mGroup);
+            }
+            return entry.mFeasibility;
+        }
+    }
+
+    /**
+     * @return The number of draws and checks that found their group in the cache.
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return The number of draws and checks that had to compile their group.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return The number of groups dropped to make room for others.
+     */
+    public long getEvictions() {
+        return mEvictions.get();
+    }
+
+    /**
+     * @return The number of groups in the cache.
+     */
+    public int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * Forgets every group, leaving the hit and miss counts alone.
+     */
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    private CachedGroup lookup(Map<Long, Set<Long>> members) {
+        GroupKey key = new GroupKey(CompiledGroup.index(members));
+        CachedGroup entry;
+        synchronized (mEntries) {
+            entry = mEntries.get(key);
+        }
+        if (entry != null) {
+            mHits.incrementAndGet();
+            return entry;
+        }
+        mMisses.incrementAndGet();
+
+        // Compile outside the lock; a racing miss on the same group just compiles it twice.
+        CompiledGroup group = key.mGroup.precompiled();
+        CachedGroup created = new CachedGroup(group);
+        synchronized (mEntries) {
+            entry = mEntries.get(key);
+            if (entry == null) {
+                entry = created;
+                mEntries.put(new GroupKey(group, key.mFingerprint), entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * A group compared by its canonical form, hashed by its fingerprint.
+     */
+    private static final class GroupKey {
+        final CompiledGroup mGroup;
+        final long mFingerprint;
+
+        GroupKey(CompiledGroup group) {
+            this(group, group.fingerprint());
+        }
+
+        GroupKey(CompiledGroup group, long fingerprint) {
+            mGroup = group;
+            mFingerprint = fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mFingerprint ^ (mFingerprint >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey other = (GroupKey) o;
+            return mFingerprint == other.mFingerprint && mGroup.sameAs(other.mGroup);
+        }
+    }
+
+    /**
+     * What is known about one group.
+     */
+    private static final class CachedGroup {
+        final CompiledGroup mGroup;
+        // Set when first needed, guarded by this entry; impossible groups are checked up front.
+        Feasibility mFeasibility;
+        volatile Map<Long, Long> mDraw;
+
+        CachedGroup(CompiledGroup group) {
+            mGroup = group;
+            mFeasibility = group.isFeasible() ? null : Feasibility.check(group);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A DrawEngine that can also draw a {@link CompiledGroup}, so callers that hold on to
+ * compiled groups can skip compiling the members for every draw.
+ */
+interface CompiledDrawEngine extends DrawEngine {
+
+    /**
+     * @return The draw, of which {@link DrawResult#asMap()} is the equivalent of {@link #generateDraw(java.util.Map)}.
+     * @throws DrawFailureException If the group can't be drawn.
+     */
+    DrawResult generateDraw(CompiledGroup group) throws DrawFailureException;
+}
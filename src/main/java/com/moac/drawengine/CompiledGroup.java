@@ -0,0 +1,311 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A members and restrictions mapping compiled down to dense int indices.
+ *
+ * Member ids are held in ascending order, so the index of a member is its
+ * position in that order. Restrictions are held per member as a sorted
+ * slice of one shared int array (compressed sparse rows); self restrictions
+ * and restrictions on ids outside the group are dropped as they can never
+ * affect a draw. The same restrictions are also held per restricted member,
+ * to find who restricts a member.
+ *
+ * A group compiled with {@link #compile(Map)} is for drawing many times, see
+ * {@link IndexedDrawEngine#generateDraw(CompiledGroup)}. It also holds the
+ * most restricted first order of the givers, whether the group can be drawn
+ * at all and, for groups of up to {@value #MAX_MATRIX_SIZE} members, the
+ * restrictions as a bit matrix. It is immutable and can be shared between
+ * threads.
+ */
+public final class CompiledGroup {
+
+    // The largest group given a restriction bit matrix (2MB).
+    static final int MAX_MATRIX_SIZE = 4096;
+
+    private final long[] mIds;
+    private final int[] mRestrictionOffsets;
+    private final int[] mRestrictions;
+    private final int[] mRestrictorOffsets;
+    private final int[] mRestrictors;
+
+    // Only when compiled for repeated draws.
+    private final long[] mMatrix;
+    private final int mMatrixWords;
+    private final int[] mOrder;
+    private final boolean mFeasible;
+    private final String mBlockingSet;
+
+    private CompiledGroup(long[] ids, int[] restrictionOffsets, int[] restrictions, boolean precompute) {
+        mIds = ids;
+        mRestrictionOffsets = restrictionOffsets;
+        mRestrictions = restrictions;
+
+        // Transpose the restrictions; givers are visited in order, so each slice is sorted.
+        int n = ids.length;
+        mRestrictorOffsets = new int[n + 1];
+        for (int restriction : restrictions) {
+            mRestrictorOffsets[restriction + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            mRestrictorOffsets[i + 1] += mRestrictorOffsets[i];
+        }
+        mRestrictors = new int[restrictions.length];
+        int[] fill = Arrays.copyOf(mRestrictorOffsets, n);
+        for (int giver = 0; giver < n; giver++) {
+            for (int i = restrictionOffsets[giver]; i < restrictionOffsets[giver + 1]; i++) {
+                mRestrictors[fill[restrictions[i]]++] = giver;
+            }
+        }
+
+        if (!precompute) {
+            mMatrix = null;
+            mMatrixWords = 0;
+            mOrder = null;
+            mFeasible = true;
+            mBlockingSet = null;
+            return;
+        }
+
+        if (n <= MAX_MATRIX_SIZE) {
+            mMatrixWords = (n + 63) >>> 6;
+            mMatrix = new long[n * mMatrixWords];
+            for (int giver = 0; giver < n; giver++) {
+                setBit(giver, giver);
+                for (int i = restrictionOffsets[giver]; i < restrictionOffsets[giver + 1]; i++) {
+                    setBit(giver, restrictions[i]);
+                }
+            }
+        } else {
+            mMatrix = null;
+            mMatrixWords = 0;
+        }
+        mOrder = IndexedDrawEngine.sortByRestrictions(this);
+
+        // A fixed seed, so the same members always give the same verdict.
+        Matching matching = Matching.random(this, new FastRandom(0), new SearchCounters());
+        mFeasible = matching.isPerfect();
+        mBlockingSet = mFeasible ? null : matching.describeBlockingSet();
+    }
+
+    private void setBit(int giver, int receiver) {
+        mMatrix[giver * mMatrixWords + (receiver >>> 6)] |= 1L << receiver;
+    }
+
+    /**
+     * Compiles the members for drawing many times.
+     *
+     * @param members A mapping between the members in the draw and their associated restrictions.
+     * @return The compiled group, which can be shared between threads.
+     * @throws IllegalArgumentException If the members are null.
+     */
+    public static CompiledGroup compile(Map<Long, Set<Long>> members) {
+        if (members == null) {
+            throw new IllegalArgumentException("Members are required.");
+        }
+        return compile(members, true);
+    }
+
+    /**
+     * Compiles the members for a single draw, skipping what only pays off
+     * over repeated draws.
+     */
+    static CompiledGroup index(Map<Long, Set<Long>> members) {
+        return compile(members, false);
+    }
+
+    /**
+     * Compiles rows already in index order, such as those read from a file.
+     *
+     * @param ids          The member ids, ascending and unique.
+     * @param offsets      The start of each member's restrictions, plus the end.
+     * @param restrictions Each member's restricted indices, ascending, unique and excluding self.
+     */
+    static CompiledGroup compile(long[] ids, int[] offsets, int[] restrictions) {
+        return new CompiledGroup(ids, offsets, restrictions, true);
+    }
+
+    /**
+     * Indexes rows already in index order for a single draw, as {@link #compile(long[], int[], int[])}
+     * without the precomputation.
+     */
+    static CompiledGroup index(long[] ids, int[] offsets, int[] restrictions) {
+        return new CompiledGroup(ids, offsets, restrictions, false);
+    }
+
+    private static CompiledGroup compile(Map<Long, Set<Long>> members, boolean precompute) {
+        int n = members.size();
+        long[] ids = new long[n];
+        int i = 0;
+        for (Long id : members.keySet()) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+
+        int[] offsets = new int[n + 1];
+        int[] restrictions = new int[16];
+        int count = 0;
+        for (int giver = 0; giver < n; giver++) {
+            offsets[giver] = count;
+            Set<Long> restricted = members.get(ids[giver]);
+            if (restricted != null) {
+                for (Long id : restricted) {
+                    int receiver = id == null ? -1 : Arrays.binarySearch(ids, id);
+                    if (receiver >= 0 && receiver != giver) {
+                        if (count == restrictions.length) {
+                            restrictions = Arrays.copyOf(restrictions, count * 2);
+                        }
+                        restrictions[count++] = receiver;
+                    }
+                }
+            }
+            Arrays.sort(restrictions, offsets[giver], count);
+        }
+        offsets[n] = count;
+        return new CompiledGroup(ids, offsets, Arrays.copyOf(restrictions, count), precompute);
+    }
+
+    /**
+     * @return The number of members in the group.
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @return true if the group can be drawn. Always true unless compiled with {@link #compile(Map)}.
+     */
+    public boolean isFeasible() {
+        return mFeasible;
+    }
+
+    /**
+     * @return If the group can't be drawn, a description of members who between them
+     * can only give to fewer members, otherwise null.
+     */
+    public String getBlockingSet() {
+        return mBlockingSet;
+    }
+
+    /**
+     * @return This group with everything {@link #compile(Map)} precomputes, sharing its rows.
+     */
+    CompiledGroup precompiled() {
+        return mOrder != null ? this : new CompiledGroup(mIds, mRestrictionOffsets, mRestrictions, true);
+    }
+
+    /**
+     * @return A hash of the members and their effective restrictions, the same for any
+     * two groups that are {@link #sameAs(CompiledGroup)} each other.
+     */
+    long fingerprint() {
+        long hash = FastRandom.splitMix64(mIds.length);
+        for (long id : mIds) {
+            hash = FastRandom.splitMix64(hash + id);
+        }
+        for (int offset : mRestrictionOffsets) {
+            hash = FastRandom.splitMix64(hash + offset);
+        }
+        for (int restriction : mRestrictions) {
+            hash = FastRandom.splitMix64(hash + restriction);
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the other group has the same members and effective restrictions,
+     * so any draw of one is a draw of the other.
+     */
+    boolean sameAs(CompiledGroup other) {
+        return Arrays.equals(mIds, other.mIds) && Arrays.equals(mRestrictionOffsets, other.mRestrictionOffsets)
+                && Arrays.equals(mRestrictions, other.mRestrictions);
+    }
+
+    /**
+     * @return The member indices in a descending order of restrictedness, or null
+     * unless compiled with {@link #compile(Map)}. Not copied.
+     */
+    int[] order() {
+        return mOrder;
+    }
+
+    /**
+     * @return The member id at the given index.
+     */
+    long id(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * @return The member ids in ascending order. Not copied.
+     */
+    long[] ids() {
+        return mIds;
+    }
+
+    /**
+     * @return The index of the given member id, or a negative value if it is not a member.
+     */
+    int indexOf(long id) {
+        return Arrays.binarySearch(mIds, id);
+    }
+
+    /**
+     * @return The number of (effective) restrictions of the given member.
+     */
+    int restrictionCount(int giver) {
+        return mRestrictionOffsets[giver + 1] - mRestrictionOffsets[giver];
+    }
+
+    /**
+     * @return The i'th (in ascending index order) member restricted by the giver.
+     */
+    int restriction(int giver, int i) {
+        return mRestrictions[mRestrictionOffsets[giver] + i];
+    }
+
+    /**
+     * @return The number of members who restrict the receiver.
+     */
+    int restrictorCount(int receiver) {
+        return mRestrictorOffsets[receiver + 1] - mRestrictorOffsets[receiver];
+    }
+
+    /**
+     * @return The i'th (in ascending index order) member who restricts the receiver.
+     */
+    int restrictor(int receiver, int i) {
+        return mRestrictors[mRestrictorOffsets[receiver] + i];
+    }
+
+    /**
+     * @return true if the giver can't be assigned the receiver, either because it
+     * is a restriction or because they are the same member.
+     */
+    boolean isExcluded(int giver, int receiver) {
+        if (mMatrix != null) {
+            return (mMatrix[giver * mMatrixWords + (receiver >>> 6)] & (1L << receiver)) != 0;
+        }
+        return giver == receiver || Arrays.binarySearch(mRestrictions,
+                mRestrictionOffsets[giver], mRestrictionOffsets[giver + 1], receiver) >= 0;
+    }
+}
@@ -0,0 +1,402 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A DrawEngine whose draws form one loop through every member (A gives to B,
+ * B to C, ... and the last back to A), or more generally whose every loop has
+ * at least a minimum number of members.
+ *
+ * Any draw is a set of loops. Starting from a random matching, loops are joined
+ * two at a time: if a gives to a' in one loop and b to b' in another, and a may
+ * give to b' and b to a', swapping their receivers joins the two loops into one.
+ * A random matching has only about ln(n) loops, and with sparse restrictions a
+ * partner is found in a few random tries, so thousands of members are joined up
+ * in milliseconds. Should the joining get stuck it is retried from a fresh
+ * matching, and failing that a backtracking search is run until it succeeds,
+ * proves there is no such draw or reaches the deadline. The search builds the
+ * loops one at a time, closing each only once it has the minimum length, so it
+ * also finds draws which are several long loops but no single loop. Its worst
+ * case is exponential in the number of members.
+ */
+public class CycleDrawEngine implements DrawEngine {
+
+    /**
+     * Minimum loop length asking for a single loop through every member.
+     */
+    public static final int SINGLE_CYCLE = Integer.MAX_VALUE;
+
+    // Joining attempts from a fresh matching before backtracking.
+    private static final int JOIN_ATTEMPTS = 3;
+    // Random partners tried for a member before trying every member.
+    private static final int RANDOM_PARTNERS = 32;
+    // Steps of the backtracking search between checks of the deadline; a power of two.
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private final int mMinCycleLength;
+    private final long mDeadlineNanos;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    /**
+     * A single loop, with no deadline. Should the joining of loops get stuck, the
+     * backtracking search may then take time exponential in the number of members.
+     */
+    public CycleDrawEngine() {
+        this(SINGLE_CYCLE, 0, TimeUnit.MILLISECONDS, RandomSource.unseeded());
+    }
+
+    /**
+     * @param minCycleLength The fewest members in any loop, at least 2, or {@link #SINGLE_CYCLE}.
+     * @param deadline       The time allowed for a draw, or zero for no limit.
+     * @param unit           The unit of the deadline.
+     * @param randomSource   Provides the randomness for each draw.
+     */
+    public CycleDrawEngine(int minCycleLength, long deadline, TimeUnit unit, RandomSource randomSource) {
+        if (minCycleLength < 2 || deadline < 0 || unit == null || randomSource == null) {
+            throw new IllegalArgumentException(
+                    "A minimum cycle length of at least 2, a non-negative deadline and a random source are required.");
+        }
+        mMinCycleLength = minCycleLength;
+        mDeadlineNanos = unit.toNanos(deadline);
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none. Each join
+     *                 or backtracking step is counted as a node, each fresh matching as a restart.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        long start = System.nanoTime();
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+        int minLength = Math.min(mMinCycleLength, n);
+        probe.prepared();
+
+        SearchCounters counters = new SearchCounters();
+        int[] next = null;
+        for (int attempt = 0; attempt < JOIN_ATTEMPTS && next == null; attempt++) {
+            if (attempt > 0) {
+                counters.restart();
+            }
+            Matching matching = Matching.random(group, random, counters);
+            if (!matching.isPerfect()) {
+                probe.finish(counters, false);
+                throw new DrawFailureException(matching.describeBlockingSet());
+            }
+            if (join(group, matching.assignments(), minLength, random, counters)) {
+                next = matching.assignments();
+            }
+        }
+
+        if (next == null) {
+            next = new int[n];
+            long deadline = mDeadlineNanos == 0 ? 0 : start + mDeadlineNanos;
+            int outcome = minLength == n ? searchCycle(group, next, random, deadline, counters)
+                    : searchCycles(group, next, minLength, random, deadline, counters);
+            if (outcome != IndexedDrawEngine.FOUND) {
+                probe.finish(counters, false);
+                if (outcome == IndexedDrawEngine.ABORTED) {
+                    throw new DrawFailureException(String.format("No draw found within the deadline of %d ms.",
+                            TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos)));
+                }
+                throw new DrawFailureException(minLength == n ? "No single cycle draw is possible."
+                        : String.format("No draw with cycles of at least %d members was found.", minLength));
+            }
+        }
+        probe.searched();
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(next[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * Joins the loops of a draw until every loop has at least the minimum length.
+     *
+     * @param next The receiver index for each giver index; updated in place.
+     * @return false if the joining got stuck.
+     */
+    static boolean join(CompiledGroup group, int[] next, int minLength, Random random, SearchCounters counters) {
+        int n = next.length;
+
+        // Each loop is a set of a union-find; joining loops only ever merges sets.
+        int[] parents = new int[n];
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            parents[i] = -1;
+        }
+        for (int i = 0; i < n; i++) {
+            if (parents[i] < 0) {
+                int length = 0;
+                int member = i;
+                do {
+                    parents[member] = i;
+                    length++;
+                    member = next[member];
+                } while (member != i);
+                sizes[i] = length;
+            }
+        }
+
+        // Visit members in a random order, joining each one's loop while it is too short.
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        IndexedDrawEngine.shuffle(order, random);
+        int shortLoops = 0;
+        for (int i = 0; i < n; i++) {
+            if (parents[i] == i && sizes[i] < minLength) {
+                shortLoops++;
+            }
+        }
+
+        for (int i = 0; i < n && shortLoops > 0; i++) {
+            int a = order[i];
+            int loop = find(parents, a);
+            while (sizes[loop] < minLength) {
+                int b = partner(group, next, parents, a, loop, random);
+                if (b < 0) {
+                    break;
+                }
+                int other = find(parents, b);
+                int tmp = next[a];
+                next[a] = next[b];
+                next[b] = tmp;
+                counters.node();
+
+                if (sizes[other] < minLength) {
+                    shortLoops--;
+                }
+                parents[other] = loop;
+                sizes[loop] += sizes[other];
+                if (sizes[loop] >= minLength) {
+                    shortLoops--;
+                }
+            }
+        }
+        return shortLoops == 0;
+    }
+
+    /**
+     * @return A member b of another loop such that a and b may swap receivers, or -1.
+     */
+    private static int partner(CompiledGroup group, int[] next, int[] parents, int a, int loop, Random random) {
+        int n = next.length;
+        for (int i = 0; i < RANDOM_PARTNERS; i++) {
+            int b = random.nextInt(n);
+            if (canSwap(group, next, parents, a, b, loop)) {
+                return b;
+            }
+        }
+        int offset = random.nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int b = (offset + i) % n;
+            if (canSwap(group, next, parents, a, b, loop)) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean canSwap(CompiledGroup group, int[] next, int[] parents, int a, int b, int loop) {
+        return find(parents, b) != loop && !group.isExcluded(a, next[b]) && !group.isExcluded(b, next[a]);
+    }
+
+    private static int find(int[] parents, int member) {
+        int root = member;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[member] != root) {
+            int tmp = parents[member];
+            parents[member] = root;
+            member = tmp;
+        }
+        return root;
+    }
+
+    /**
+     * Backtracking search for a single loop, extending a path from a random member
+     * through the members in a random order.
+     *
+     * @param next     Populated with the receiver index for each giver index.
+     * @param deadline The System.nanoTime() to give up at, or zero for none.
+     * @return {@link IndexedDrawEngine#FOUND}, {@link IndexedDrawEngine#EXHAUSTED} if
+     * there is no single loop, or {@link IndexedDrawEngine#ABORTED} at the deadline.
+     */
+    static int searchCycle(CompiledGroup group, int[] next, Random random, long deadline, SearchCounters counters) {
+        int n = next.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        IndexedDrawEngine.shuffle(order, random);
+        boolean[] visited = new boolean[n];
+        int[] path = new int[n];
+        int[] cursors = new int[n];
+
+        path[0] = order[0];
+        visited[path[0]] = true;
+        int depth = 0;
+        long steps = 0;
+        while (depth >= 0) {
+            if ((++steps & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && deadline != 0 && System.nanoTime() - deadline > 0) {
+                return IndexedDrawEngine.ABORTED;
+            }
+            int from = path[depth];
+            if (depth == n - 1) {
+                if (!group.isExcluded(from, path[0])) {
+                    for (int i = 0; i < n - 1; i++) {
+                        next[path[i]] = path[i + 1];
+                    }
+                    next[from] = path[0];
+                    return IndexedDrawEngine.FOUND;
+                }
+            } else {
+                int cursor = cursors[depth];
+                while (cursor < n && (visited[order[cursor]] || group.isExcluded(from, order[cursor]))) {
+                    cursor++;
+                }
+                if (cursor < n) {
+                    cursors[depth] = cursor + 1;
+                    path[++depth] = order[cursor];
+                    visited[order[cursor]] = true;
+                    cursors[depth] = 0;
+                    counters.node();
+                    continue;
+                }
+            }
+            // Go back and extend the path differently.
+            visited[from] = false;
+            depth--;
+            counters.backtrack();
+        }
+        return IndexedDrawEngine.EXHAUSTED;
+    }
+
+    /**
+     * Backtracking search for a draw whose every loop has at least the minimum length.
+     * Loops are built one at a time as paths through the members in a random order:
+     * each path is extended, or closed back to its first member once it is long enough
+     * and enough members remain for another loop, and the next loop starts from the
+     * first member not yet in a loop.
+     *
+     * @param next     Populated with the receiver index for each giver index.
+     * @param deadline The System.nanoTime() to give up at, or zero for none.
+     * @return {@link IndexedDrawEngine#FOUND}, {@link IndexedDrawEngine#EXHAUSTED} if
+     * there is no such draw, or {@link IndexedDrawEngine#ABORTED} at the deadline.
+     */
+    static int searchCycles(CompiledGroup group, int[] next, int minLength, Random random, long deadline,
+                            SearchCounters counters) {
+        int n = next.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        IndexedDrawEngine.shuffle(order, random);
+        boolean[] visited = new boolean[n];
+        int[] path = new int[n];
+        // The depth each path member's loop starts at.
+        int[] loopStarts = new int[n];
+        // The next member of order to try extending to, or n to try closing the loop, then n + 1.
+        int[] cursors = new int[n];
+
+        path[0] = order[0];
+        visited[path[0]] = true;
+        int depth = 0;
+        long steps = 0;
+        while (depth >= 0) {
+            if ((++steps & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && deadline != 0 && System.nanoTime() - deadline > 0) {
+                return IndexedDrawEngine.ABORTED;
+            }
+            int from = path[depth];
+            int loopStart = loopStarts[depth];
+            int cursor = cursors[depth];
+            while (cursor < n && (visited[order[cursor]] || group.isExcluded(from, order[cursor]))) {
+                cursor++;
+            }
+            if (cursor < n) {
+                cursors[depth] = cursor + 1;
+                path[++depth] = order[cursor];
+                visited[order[cursor]] = true;
+                loopStarts[depth] = loopStart;
+                cursors[depth] = 0;
+                counters.node();
+                continue;
+            }
+            cursors[depth] = n + 1;
+            int remaining = n - depth - 1;
+            if (cursor == n && depth - loopStart + 1 >= minLength && !group.isExcluded(from, path[loopStart])
+                    && (remaining == 0 || remaining >= minLength)) {
+                if (remaining == 0) {
+                    for (int i = 0; i < n; i++) {
+                        next[path[i]] = i + 1 < n && loopStarts[i + 1] == loopStarts[i]
+                                ? path[i + 1] : path[loopStarts[i]];
+                    }
+                    return IndexedDrawEngine.FOUND;
+                }
+                // Close the loop and start the next from the first member left.
+                int first = 0;
+                while (visited[order[first]]) {
+                    first++;
+                }
+                path[++depth] = order[first];
+                visited[order[first]] = true;
+                loopStarts[depth] = depth;
+                cursors[depth] = 0;
+                counters.node();
+                continue;
+            }
+            // Go back and extend or close the path differently.
+            visited[from] = false;
+            depth--;
+            counters.backtrack();
+        }
+        return IndexedDrawEngine.EXHAUSTED;
+    }
+}
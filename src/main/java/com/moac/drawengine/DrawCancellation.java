@@ -0,0 +1,132 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a draw made through {@link AsyncDrawEngine} be stopped part way through its search.
+ *
+ * The token of the draw running on a thread is found with {@link #current()}. Searches
+ * that support cancellation poll it at each step and give up once it is cancelled or
+ * past its deadline; draws made directly have no token, so pay only for a null check.
+ */
+final class DrawCancellation {
+
+    // Polls between reads of the clock and the cancelled flag.
+    private static final int POLL_MASK = 1023;
+
+    private static final ThreadLocal<DrawCancellation> CURRENT = new ThreadLocal<DrawCancellation>();
+
+    private final long mStart;
+    private final long mDeadlineNanos;
+    private volatile boolean mCancelled;
+    private volatile boolean mPolled;
+
+    // Only used by the drawing thread.
+    private int mPolls;
+    private boolean mStopped;
+
+    /**
+     * @param deadlineNanos The time allowed for the draw from now, or zero for no limit.
+     */
+    DrawCancellation(long deadlineNanos) {
+        mStart = System.nanoTime();
+        mDeadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return The token of the draw running on this thread, or null if there is none.
+     */
+    static DrawCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the token of the draw running on this thread.
+     *
+     * @return The previous token, to pass to {@link #exit(DrawCancellation)}.
+     */
+    DrawCancellation enter() {
+        DrawCancellation previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    static void exit(DrawCancellation previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return true once a search has polled this token, so will notice when it is stopped.
+     */
+    boolean isPolled() {
+        return mPolled;
+    }
+
+    /**
+     * Called by a search at each step; only every so often checks the flag and the clock.
+     *
+     * @return true if the search should stop. Once true, it stays true.
+     */
+    boolean poll() {
+        if (mStopped) {
+            return true;
+        }
+        if ((mPolls++ & POLL_MASK) != 0) {
+            return false;
+        }
+        mPolled = true;
+        mStopped = mCancelled || (mDeadlineNanos != 0 && System.nanoTime() - mStart >= mDeadlineNanos);
+        return mStopped;
+    }
+
+    /**
+     * @return true if {@link #poll()} has returned true.
+     */
+    boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * @return The exception for a search that stopped because {@link #poll()} returned true.
+     */
+    DrawFailureException failure(DrawEngine engine, int members, long seed, SearchCounters counters) {
+        if (mCancelled) {
+            return new DrawFailureException("Draw cancelled.");
+        }
+        return timeout(engine.getClass().getSimpleName(), members, seed, counters);
+    }
+
+    /**
+     * @return A timeout carrying the work counted so far. The search time is measured from
+     * when the draw was submitted, so includes any time spent waiting for a thread.
+     */
+    DrawTimeoutException timeout(String engine, int members, long seed, SearchCounters counters) {
+        return new DrawTimeoutException(String.format("No draw found within the deadline of %d ms.",
+                TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos)),
+                new DrawStatistics(engine, members, false, seed, counters, 0, System.nanoTime() - mStart, 0, -1));
+    }
+}
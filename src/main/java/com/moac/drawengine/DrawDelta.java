@@ -0,0 +1,86 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Changes to a group after it has been drawn, to be applied by an {@link IncrementalDraw}.
+ *
+ * Changes are applied in the order they were added.
+ */
+public class DrawDelta {
+
+    enum Type {ADD_MEMBER, REMOVE_MEMBER, ADD_RESTRICTION, REMOVE_RESTRICTION}
+
+    static final class Change {
+        final Type mType;
+        final long mMember;
+        final long mOther;
+        final Set<Long> mRestrictions;
+
+        Change(Type type, long member, long other, Set<Long> restrictions) {
+            mType = type;
+            mMember = member;
+            mOther = other;
+            mRestrictions = restrictions;
+        }
+    }
+
+    private final List<Change> mChanges = new ArrayList<Change>();
+
+    /**
+     * @param member       The new member.
+     * @param restrictions The new member's restrictions, may be empty.
+     */
+    public DrawDelta addMember(long member, Set<Long> restrictions) {
+        mChanges.add(new Change(Type.ADD_MEMBER, member, 0,
+                restrictions == null ? new HashSet<Long>() : new HashSet<Long>(restrictions)));
+        return this;
+    }
+
+    public DrawDelta removeMember(long member) {
+        mChanges.add(new Change(Type.REMOVE_MEMBER, member, 0, null));
+        return this;
+    }
+
+    /**
+     * @param giver    The member adding the restriction.
+     * @param receiver The member they may no longer be assigned.
+     */
+    public DrawDelta addRestriction(long giver, long receiver) {
+        mChanges.add(new Change(Type.ADD_RESTRICTION, giver, receiver, null));
+        return this;
+    }
+
+    /**
+     * @param giver    The member removing the restriction.
+     * @param receiver The member they may be assigned again.
+     */
+    public DrawDelta removeRestriction(long giver, long receiver) {
+        mChanges.add(new Change(Type.REMOVE_RESTRICTION, giver, receiver, null));
+        return this;
+    }
+
+    List<Change> getChanges() {
+        return mChanges;
+    }
+
+    public boolean isEmpty() {
+        return mChanges.isEmpty();
+    }
+}
@@ -27,6 +27,14 @@ public class DrawFailureException extends Exception {
         super(msg);
     }
 
+    /**
+     * @param msg   A message describing why the draw failed.
+     * @param cause The unexpected exception that failed the draw.
+     */
+    DrawFailureException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
     DrawFailureException() {
         super();
     }
@@ -0,0 +1,31 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Receives the statistics of each draw made by a DrawEngine it is attached to.
+ *
+ * Called on the drawing thread once the draw completes or fails, so it should be
+ * quick and, if attached to an engine drawing on several threads, thread safe.
+ */
+public interface DrawListener {
+
+    /**
+     * @param statistics The statistics of the completed draw.
+     */
+    void onDraw(DrawStatistics statistics);
+}
@@ -0,0 +1,142 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DrawListener keeping running totals and histograms of every draw it hears
+ * about, for monitoring to read. Thread safe; one instance can be attached to
+ * several engines.
+ */
+public class DrawMetrics implements DrawListener {
+
+    private final AtomicLong mDraws = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mNodes = new AtomicLong();
+    private final AtomicLong mBacktracks = new AtomicLong();
+    private final AtomicLong mRestarts = new AtomicLong();
+    private final AtomicLong mAllocatedBytes = new AtomicLong();
+    private final LogHistogram mLatencyNanos = new LogHistogram();
+    private final LogHistogram mBacktrackCounts = new LogHistogram();
+    private final LogHistogram mDeepestRollbacks = new LogHistogram();
+    private final ConcurrentMap<String, AtomicLong> mEngineDraws = new ConcurrentHashMap<String, AtomicLong>();
+
+    public void onDraw(DrawStatistics statistics) {
+        mDraws.incrementAndGet();
+        if (!statistics.isSuccess()) {
+            mFailures.incrementAndGet();
+        }
+        mNodes.addAndGet(statistics.getNodes());
+        mBacktracks.addAndGet(statistics.getBacktracks());
+        mRestarts.addAndGet(statistics.getRestarts());
+        if (statistics.getAllocatedBytes() > 0) {
+            mAllocatedBytes.addAndGet(statistics.getAllocatedBytes());
+        }
+        mLatencyNanos.record(statistics.getTotalNanos());
+        mBacktrackCounts.record(statistics.getBacktracks());
+        mDeepestRollbacks.record(statistics.getDeepestRollback());
+        AtomicLong engineDraws = mEngineDraws.get(statistics.getEngine());
+        if (engineDraws == null) {
+            AtomicLong added = new AtomicLong();
+            engineDraws = mEngineDraws.putIfAbsent(statistics.getEngine(), added);
+            if (engineDraws == null) {
+                engineDraws = added;
+            }
+        }
+        engineDraws.incrementAndGet();
+    }
+
+    /**
+     * @return The number of draws, successful or not.
+     */
+    public long getDraws() {
+        return mDraws.get();
+    }
+
+    /**
+     * @return The number of draws, successful or not, by each engine, or by each route
+     * of an engine choosing one per draw; see {@link DrawStatistics#getEngine()}.
+     */
+    public Map<String, Long> getDrawsByEngine() {
+        Map<String, Long> draws = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : mEngineDraws.entrySet()) {
+            draws.put(entry.getKey(), entry.getValue().get());
+        }
+        return draws;
+    }
+
+    /**
+     * @return The number of failed draws.
+     */
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    /**
+     * @return The total assignments made by all draws.
+     */
+    public long getNodes() {
+        return mNodes.get();
+    }
+
+    /**
+     * @return The total assignments undone by all draws.
+     */
+    public long getBacktracks() {
+        return mBacktracks.get();
+    }
+
+    /**
+     * @return The total restarts of all draws.
+     */
+    public long getRestarts() {
+        return mRestarts.get();
+    }
+
+    /**
+     * @return The total bytes allocated by all draws, where measurable.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes.get();
+    }
+
+    /**
+     * @return The distribution of draw times, in nanoseconds.
+     */
+    public LogHistogram getLatencyNanos() {
+        return mLatencyNanos;
+    }
+
+    /**
+     * @return The distribution of backtracks per draw.
+     */
+    public LogHistogram getBacktrackCounts() {
+        return mBacktrackCounts;
+    }
+
+    /**
+     * @return The distribution of the deepest rollback per draw.
+     */
+    public LogHistogram getDeepestRollbacks() {
+        return mDeepestRollbacks;
+    }
+}
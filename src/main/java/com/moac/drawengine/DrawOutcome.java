@@ -0,0 +1,63 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * The outcome of one group's draw within a batch: either the draw, or the
+ * reason it failed.
+ */
+public final class DrawOutcome {
+
+    private final Map<Long, Long> mDraw;
+    private final DrawFailureException mFailure;
+
+    private DrawOutcome(Map<Long, Long> draw, DrawFailureException failure) {
+        mDraw = draw;
+        mFailure = failure;
+    }
+
+    static DrawOutcome success(Map<Long, Long> draw) {
+        return new DrawOutcome(draw, null);
+    }
+
+    static DrawOutcome failure(DrawFailureException failure) {
+        return new DrawOutcome(null, failure);
+    }
+
+    /**
+     * @return true if the draw was successful.
+     */
+    public boolean isSuccess() {
+        return mDraw != null;
+    }
+
+    /**
+     * @return A mapping between the member and their assignment, or null if the draw failed.
+     */
+    public Map<Long, Long> getDraw() {
+        return mDraw;
+    }
+
+    /**
+     * @return Why the draw failed, or null if it was successful.
+     */
+    public DrawFailureException getFailure() {
+        return mFailure;
+    }
+}
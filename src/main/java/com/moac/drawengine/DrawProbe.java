@@ -0,0 +1,119 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times the phases of one draw and reports its statistics to a DrawListener.
+ *
+ * With no listener a shared, disabled probe is used and nothing is measured.
+ */
+final class DrawProbe {
+
+    private static final DrawProbe DISABLED = new DrawProbe(null, null, 0, 0);
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final DrawListener mListener;
+    private String mEngine;
+    private final int mMembers;
+    private final long mSeed;
+    private final long mStartBytes;
+    private final long mStart;
+    private long mPrepared;
+    private long mSearched;
+
+    private DrawProbe(DrawListener listener, String engine, int members, long seed) {
+        mListener = listener;
+        mEngine = engine;
+        mMembers = members;
+        mSeed = seed;
+        mStartBytes = listener == null ? 0 : allocatedBytes();
+        mStart = listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * @param listener The listener, may be null.
+     * @param engine   The engine making the draw.
+     * @param members  The number of members in the draw.
+     * @param seed     The seed of the draw.
+     */
+    static DrawProbe start(DrawListener listener, DrawEngine engine, int members, long seed) {
+        return listener == null ? DISABLED : new DrawProbe(listener, engine.getClass().getSimpleName(), members, seed);
+    }
+
+    /**
+     * Reports the draw under the route taken, for engines choosing one per draw.
+     */
+    void route(String route) {
+        if (mListener != null) {
+            mEngine = mEngine + '/' + route;
+        }
+    }
+
+    /**
+     * Marks the end of preparing the input for the search.
+     */
+    void prepared() {
+        if (mListener != null) {
+            mPrepared = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the end of the search.
+     */
+    void searched() {
+        if (mListener != null) {
+            mSearched = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports the statistics of the draw.
+     */
+    void finish(SearchCounters counters, boolean success) {
+        if (mListener == null) {
+            return;
+        }
+        long end = System.nanoTime();
+        long prepared = mPrepared == 0 ? mStart : mPrepared;
+        long searched = mSearched == 0 ? end : mSearched;
+        long bytes = mStartBytes < 0 ? -1 : allocatedBytes() - mStartBytes;
+        mListener.onDraw(new DrawStatistics(mEngine, mMembers, success, mSeed, counters,
+                prepared - mStart, searched - prepared, end - searched, bytes));
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    return hotspot;
+                }
+            }
+        } catch (Throwable ignored) {
+            // Not a HotSpot JVM; allocations can't be measured.
+        }
+        return null;
+    }
+}
@@ -0,0 +1,356 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A draw held as arrays rather than a map of boxed ids: the member ids in
+ * ascending order, and for each member's index the index of their receiver and
+ * of their giver. Looking up either direction by index is O(1), and by id a
+ * binary search. A million member draw takes 16MB, where a HashMap of it takes
+ * around 80MB across millions of objects.
+ *
+ * {@link #asMap()} gives a read only Map view for code expecting the result of
+ * {@link DrawEngine#generateDraw(Map)}. A draw can be written to a ByteBuffer or
+ * file, and read back from a file, in the format: the magic number
+ * {@value #MAGIC}, the version, the member count n and a reserved int, then the
+ * n ascending member ids as longs and the n receiver indices as ints, all big
+ * endian.
+ */
+public final class DrawResult {
+
+    // "DRES"
+    static final int MAGIC = 0x44524553;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private final long[] mIds;
+    private final int[] mReceivers;
+    private final int[] mGivers;
+
+    /**
+     * @param ids       The member ids, ascending. Not copied, so must not be modified.
+     * @param receivers The receiver index for each giver index. Not copied.
+     */
+    DrawResult(long[] ids, int[] receivers) {
+        this(ids, receivers, invert(receivers));
+    }
+
+    /**
+     * @param givers The giver index for each receiver index. Not copied.
+     */
+    DrawResult(long[] ids, int[] receivers, int[] givers) {
+        mIds = ids;
+        mReceivers = receivers;
+        mGivers = givers;
+    }
+
+    private static int[] invert(int[] receivers) {
+        int[] givers = new int[receivers.length];
+        for (int giver = 0; giver < receivers.length; giver++) {
+            givers[receivers[giver]] = giver;
+        }
+        return givers;
+    }
+
+    /**
+     * @param draw A mapping between the member and their assignment.
+     * @throws IllegalArgumentException If the receivers aren't exactly the givers.
+     */
+    public static DrawResult of(Map<Long, Long> draw) {
+        int n = draw.size();
+        long[] ids = new long[n];
+        int i = 0;
+        for (Long id : draw.keySet()) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
+        int[] receivers = new int[n];
+        boolean[] received = new boolean[n];
+        for (Map.Entry<Long, Long> entry : draw.entrySet()) {
+            int receiver = entry.getValue() == null ? -1 : Arrays.binarySearch(ids, entry.getValue());
+            if (receiver < 0 || received[receiver]) {
+                throw new IllegalArgumentException("Not a draw, at member: " + entry.getKey());
+            }
+            received[receiver] = true;
+            receivers[Arrays.binarySearch(ids, entry.getKey())] = receiver;
+        }
+        return new DrawResult(ids, receivers);
+    }
+
+    /**
+     * @return The number of members in the draw.
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @return The member id at the given index, in ascending id order.
+     */
+    public long member(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * @return The index of the given member id, or a negative value if it is not a member.
+     */
+    public int indexOf(long id) {
+        return Arrays.binarySearch(mIds, id);
+    }
+
+    /**
+     * @return The index of the receiver of the giver at the given index.
+     */
+    public int receiverIndex(int giver) {
+        return mReceivers[giver];
+    }
+
+    /**
+     * @return The index of the giver to the receiver at the given index.
+     */
+    public int giverIndex(int receiver) {
+        return mGivers[receiver];
+    }
+
+    /**
+     * @return The member the giver gives to.
+     * @throws IllegalArgumentException If the giver isn't a member.
+     */
+    public long receiverOf(long giver) {
+        return mIds[mReceivers[requireIndex(giver)]];
+    }
+
+    /**
+     * @return The member who gives to the receiver.
+     * @throws IllegalArgumentException If the receiver isn't a member.
+     */
+    public long giverOf(long receiver) {
+        return mIds[mGivers[requireIndex(receiver)]];
+    }
+
+    private int requireIndex(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("Not a member: " + id);
+        }
+        return index;
+    }
+
+    /**
+     * @return A read only view of the draw as a mapping between the member and their
+     * assignment. Entries are created as they are iterated.
+     */
+    public Map<Long, Long> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * @return The number of bytes the draw takes when written.
+     */
+    public long byteSize() {
+        return HEADER_BYTES + 12L * mIds.length;
+    }
+
+    /**
+     * Writes the draw at the buffer's position, which is advanced past it. The draw is
+     * big endian whatever the buffer's byte order.
+     *
+     * @throws BufferOverflowException If the buffer has less than {@link #byteSize()} remaining.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < byteSize()) {
+            throw new BufferOverflowException();
+        }
+        int n = mIds.length;
+        ByteBuffer out = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+        out.asLongBuffer().put(mIds);
+        // Called on Buffer, as ByteBuffer's covariant overrides don't exist on a Java 8 runtime.
+        ((Buffer) out).position(out.position() + 8 * n);
+        out.asIntBuffer().put(mReceivers);
+        ((Buffer) buffer).position(buffer.position() + (int) byteSize());
+    }
+
+    /**
+     * Writes the draw to a file, replacing any existing file.
+     */
+    public void write(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, byteSize());
+            writeTo(map);
+            map.force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a draw written by {@link #write(Path)}.
+     *
+     * @throws IOException If the file can't be read or isn't a valid draw.
+     */
+    public static DrawResult read(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a draw file: " + path);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            DrawResult draw = read(buffer);
+            if (buffer.hasRemaining()) {
+                throw new EOFException("Draw file is truncated or corrupt.");
+            }
+            return draw;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a draw written by {@link #writeTo(ByteBuffer)} at the buffer's position,
+     * which is advanced past it. The draw is read as big endian whatever the buffer's
+     * byte order.
+     *
+     * @throws IOException If the buffer doesn't hold a valid draw.
+     */
+    public static DrawResult read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("Not a draw file.");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported draw file version: " + version);
+        }
+        int n = in.getInt();
+        in.getInt();
+        if (n < 0 || in.remaining() < 12L * n) {
+            throw new EOFException("Draw file is truncated or corrupt.");
+        }
+        long[] ids = new long[n];
+        int[] receivers = new int[n];
+        in.asLongBuffer().get(ids);
+        ((Buffer) in).position(in.position() + 8 * n);
+        in.asIntBuffer().get(receivers);
+        ((Buffer) in).position(in.position() + 4 * n);
+
+        boolean[] received = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && ids[i] <= ids[i - 1]) {
+                throw new IOException("Draw file member ids aren't ascending at member " + ids[i]);
+            }
+            int receiver = receivers[i];
+            if (receiver < 0 || receiver >= n || received[receiver]) {
+                throw new IOException("Draw file assignments are corrupt at member " + ids[i]);
+            }
+            received[receiver] = true;
+        }
+        ((Buffer) buffer).position(in.position());
+        return new DrawResult(ids, receivers);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DrawResult)) return false;
+        DrawResult other = (DrawResult) o;
+        return Arrays.equals(mIds, other.mIds) && Arrays.equals(mReceivers, other.mReceivers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mIds) + Arrays.hashCode(mReceivers);
+    }
+
+    /**
+     * The draw as a read only Map.
+     */
+    private final class MapView extends AbstractMap<Long, Long> {
+
+        @Override
+        public int size() {
+            return mIds.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && indexOf((Long) key) >= 0;
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return containsKey(value);
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof Long)) {
+                return null;
+            }
+            int index = indexOf((Long) key);
+            return index < 0 ? null : mIds[mReceivers[index]];
+        }
+
+        @Override
+        public Set<Entry<Long, Long>> entrySet() {
+            return new AbstractSet<Entry<Long, Long>>() {
+                @Override
+                public int size() {
+                    return mIds.length;
+                }
+
+                @Override
+                public Iterator<Entry<Long, Long>> iterator() {
+                    return new Iterator<Entry<Long, Long>>() {
+                        private int mIndex;
+
+                        public boolean hasNext() {
+                            return mIndex < mIds.length;
+                        }
+
+                        public Entry<Long, Long> next() {
+                            if (mIndex >= mIds.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int giver = mIndex++;
+                            return new SimpleImmutableEntry<Long, Long>(mIds[giver], mIds[mReceivers[giver]]);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
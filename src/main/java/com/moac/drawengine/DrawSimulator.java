@@ -0,0 +1,191 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates many draws of one compiled group across several threads, to estimate
+ * before a group opens how often its draw succeeds, how long it takes and how
+ * evenly it pairs members.
+ *
+ * Draws run the {@link IndexedDrawEngine} search directly, so each thread reuses
+ * the same search space for every draw and nothing is allocated per draw. Draws are
+ * handed out in fixed chunks, each with its own random stream split from the
+ * simulation's seed, so a seeded simulation gives the same counts whatever the
+ * number of threads.
+ */
+public final class DrawSimulator {
+
+    // The largest group whose pairs are counted; each thread holds an n^2 matrix of counts (2MB).
+    static final int MAX_PAIR_MATRIX_SIZE = 512;
+
+    // Draws handed to a thread at a time.
+    private static final int CHUNK_SIZE = 4096;
+
+    private final ExecutorService mExecutor;
+    private final int mParallelism;
+    private final long mMaxBacktracks;
+
+    /**
+     * Simulates on the common fork-join pool, searching each draw exhaustively.
+     */
+    public DrawSimulator() {
+        this(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), Long.MAX_VALUE);
+    }
+
+    /**
+     * @param executor      Runs the simulation.
+     * @param parallelism   The number of threads to simulate on.
+     * @param maxBacktracks The backtracks allowed per draw before it counts as a failure,
+     *                      standing in for a deadline; Long.MAX_VALUE for none.
+     */
+    public DrawSimulator(ExecutorService executor, int parallelism, long maxBacktracks) {
+        if (executor == null || parallelism < 1 || maxBacktracks < 0) {
+            throw new IllegalArgumentException(
+                    "Executor, parallelism of at least one and a non-negative backtrack limit are required.");
+        }
+        mExecutor = executor;
+        mParallelism = parallelism;
+        mMaxBacktracks = maxBacktracks;
+    }
+
+    /**
+     * @param group        A group compiled with {@link CompiledGroup#compile(java.util.Map)}.
+     * @param draws        The number of draws to simulate.
+     * @param randomSource Provides the seed of the simulation.
+     * @return The statistics of the draws. If the group can't be drawn, every draw fails
+     * without being searched.
+     * @throws InterruptedException If interrupted while waiting for the draws to complete.
+     */
+    public SimulationReport simulate(final CompiledGroup group, final long draws, RandomSource randomSource)
+            throws InterruptedException {
+        if (group == null || group.size() < 2 || draws < 0 || randomSource == null) {
+            throw new IllegalArgumentException("A group of at least two members, a non-negative number of draws "
+                    + "and a random source are required.");
+        }
+        final long seed = randomSource.nextSeed();
+        long start = System.nanoTime();
+        if (!group.isFeasible()) {
+            return new SimulationReport(group.ids(), draws, draws, System.nanoTime() - start, new LogHistogram(),
+                    new LogHistogram(), null);
+        }
+
+        final long chunks = (draws + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final AtomicLong nextChunk = new AtomicLong();
+        List<Callable<Worker>> tasks = new ArrayList<Callable<Worker>>();
+        for (int i = 0; i < Math.min(mParallelism, Math.max(1, chunks)); i++) {
+            tasks.add(new Callable<Worker>() {
+                public Worker call() {
+                    Worker worker = new Worker(group, mMaxBacktracks);
+                    for (long chunk = nextChunk.getAndIncrement(); chunk < chunks;
+                         chunk = nextChunk.getAndIncrement()) {
+                        long first = chunk * CHUNK_SIZE;
+                        worker.simulate(FastRandom.splitMix64(seed + chunk), (int) Math.min(CHUNK_SIZE, draws - first));
+                    }
+                    return worker;
+                }
+            });
+        }
+
+        long failures = 0;
+        LogHistogram latencies = new LogHistogram();
+        LogHistogram backtracks = new LogHistogram();
+        int n = group.size();
+        long[] pairs = n <= MAX_PAIR_MATRIX_SIZE ? new long[n * n] : null;
+        for (Future<Worker> future : mExecutor.invokeAll(tasks)) {
+            Worker worker;
+            try {
+                worker = future.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException(cause);
+            }
+            failures += worker.mFailures;
+            latencies.add(worker.mLatencies);
+            backtracks.add(worker.mBacktracks);
+            if (pairs != null) {
+                for (int i = 0; i < pairs.length; i++) {
+                    pairs[i] += worker.mPairs[i];
+                }
+            }
+        }
+        return new SimulationReport(group.ids(), draws, failures, System.nanoTime() - start, latencies, backtracks,
+                pairs);
+    }
+
+    /**
+     * One thread's search space and tallies.
+     */
+    private static final class Worker {
+        final CompiledGroup mGroup;
+        final long mMaxBacktracks;
+        final int[] mOrder;
+        final FastRandom mRandom = new FastRandom(0);
+        final SearchCounters mCounters = new SearchCounters();
+        final int[] mReceivers;
+        final int[] mAssignments;
+        final boolean[] mPicked;
+        final int[] mCursors;
+
+        final LogHistogram mLatencies = new LogHistogram();
+        final LogHistogram mBacktracks = new LogHistogram();
+        final long[] mPairs;
+        long mFailures;
+
+        Worker(CompiledGroup group, long maxBacktracks) {
+            int n = group.size();
+            mGroup = group;
+            mMaxBacktracks = maxBacktracks;
+            mOrder = group.order() != null ? group.order() : IndexedDrawEngine.sortByRestrictions(group);
+            mReceivers = new int[n];
+            mAssignments = new int[n];
+            mPicked = new boolean[n];
+            mCursors = new int[n];
+            mPairs = n <= MAX_PAIR_MATRIX_SIZE ? new long[n * n] : null;
+        }
+
+        void simulate(long seed, int draws) {
+            int n = mReceivers.length;
+            mRandom.setSeed(seed);
+            for (int i = 0; i < n; i++) {
+                mReceivers[i] = i;
+            }
+            for (int draw = 0; draw < draws; draw++) {
+                long start = System.nanoTime();
+                IndexedDrawEngine.shuffle(mReceivers, mRandom);
+                mCounters.reset();
+                int outcome = IndexedDrawEngine.search(mGroup, mOrder, mReceivers, mAssignments, mMaxBacktracks, null,
+                        mPicked, mCursors, mCounters);
+                mLatencies.record(System.nanoTime() - start);
+                mBacktracks.record(mCounters.mBacktracks);
+                if (outcome != IndexedDrawEngine.FOUND) {
+                    mFailures++;
+                } else if (mPairs != null) {
+                    for (int giver = 0; giver < n; giver++) {
+                        mPairs[giver * n + mAssignments[giver]]++;
+                    }
+                }
+            }
+        }
+    }
+}
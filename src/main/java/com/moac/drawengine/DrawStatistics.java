@@ -0,0 +1,161 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Statistics of a single draw, reported to a {@link DrawListener}.
+ */
+public final class DrawStatistics {
+
+    private final String mEngine;
+    private final int mMembers;
+    private final boolean mSuccess;
+    private final long mSeed;
+    private final long mNodes;
+    private final long mBacktracks;
+    private final int mDeepestRollback;
+    private final int mMaxFailedPaths;
+    private final int mRestarts;
+    private final long mPrepareNanos;
+    private final long mSearchNanos;
+    private final long mResultNanos;
+    private final long mAllocatedBytes;
+
+    DrawStatistics(String engine, int members, boolean success, long seed, SearchCounters counters,
+                   long prepareNanos, long searchNanos, long resultNanos, long allocatedBytes) {
+        mEngine = engine;
+        mMembers = members;
+        mSuccess = success;
+        mSeed = seed;
+        mNodes = counters.mNodes;
+        mBacktracks = counters.mBacktracks;
+        mDeepestRollback = counters.mDeepestRollback;
+        mMaxFailedPaths = counters.mMaxFailedPaths;
+        mRestarts = counters.mRestarts;
+        mPrepareNanos = prepareNanos;
+        mSearchNanos = searchNanos;
+        mResultNanos = resultNanos;
+        mAllocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return The simple class name of the DrawEngine, followed by the route taken
+     * for engines choosing one per draw, such as "AdaptiveDrawEngine/SEARCH".
+     */
+    public String getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * @return The number of members in the draw.
+     */
+    public int getMembers() {
+        return mMembers;
+    }
+
+    /**
+     * @return true if the draw was successful.
+     */
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+
+    /**
+     * @return The seed of the draw, to replay it with {@link RandomSource#seeded(long)}.
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * @return The number of assignments made by the search.
+     */
+    public long getNodes() {
+        return mNodes;
+    }
+
+    /**
+     * @return The number of assignments undone by the search.
+     */
+    public long getBacktracks() {
+        return mBacktracks;
+    }
+
+    /**
+     * @return The most assignments undone in a row.
+     */
+    public int getDeepestRollback() {
+        return mDeepestRollback;
+    }
+
+    /**
+     * @return The largest number of failed paths held for one member, for engines that hold them.
+     */
+    public int getMaxFailedPaths() {
+        return mMaxFailedPaths;
+    }
+
+    /**
+     * @return The number of times the search was restarted.
+     */
+    public int getRestarts() {
+        return mRestarts;
+    }
+
+    /**
+     * @return Time spent preparing the input for the search.
+     */
+    public long getPrepareNanos() {
+        return mPrepareNanos;
+    }
+
+    /**
+     * @return Time spent searching.
+     */
+    public long getSearchNanos() {
+        return mSearchNanos;
+    }
+
+    /**
+     * @return Time spent building the result.
+     */
+    public long getResultNanos() {
+        return mResultNanos;
+    }
+
+    /**
+     * @return The total time of the draw.
+     */
+    public long getTotalNanos() {
+        return mPrepareNanos + mSearchNanos + mResultNanos;
+    }
+
+    /**
+     * @return Bytes allocated by the drawing thread, or -1 if the JVM can't measure it.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d members, %s, seed %d, %d nodes, %d backtracks, deepest rollback %d, "
+                        + "max failed paths %d, %d restarts, prepare %d ns, search %d ns, result %d ns, %d bytes",
+                mEngine, mMembers, mSuccess ? "success" : "failure", mSeed, mNodes, mBacktracks, mDeepestRollback,
+                mMaxFailedPaths, mRestarts, mPrepareNanos, mSearchNanos, mResultNanos, mAllocatedBytes);
+    }
+}
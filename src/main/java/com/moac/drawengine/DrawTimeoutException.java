@@ -0,0 +1,47 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Thrown when a draw is stopped because it ran past its deadline.
+ *
+ * Carries the statistics of the search up to the point it was stopped, which
+ * show how far it got and whether a longer deadline is likely to help.
+ */
+public class DrawTimeoutException extends DrawFailureException {
+
+    private static final long serialVersionUID = 2265710563958034172L;
+
+    private final transient DrawStatistics mStatistics;
+
+    /**
+     * @param msg        A message describing the deadline that was missed.
+     * @param statistics The statistics of the search when it was stopped.
+     */
+    DrawTimeoutException(String msg, DrawStatistics statistics) {
+        super(msg);
+        mStatistics = statistics;
+    }
+
+    /**
+     * @return The statistics of the search when it was stopped. They are empty if the
+     * draw never started or its engine doesn't check for cancellation.
+     */
+    public DrawStatistics getStatistics() {
+        return mStatistics;
+    }
+}
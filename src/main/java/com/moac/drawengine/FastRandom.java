@@ -0,0 +1,80 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+/**
+ * A fast, unsynchronised Random using the xoroshiro128** generator, seeded
+ * through SplitMix64.
+ *
+ * Each draw uses its own instance, so the locking of java.util.Random buys
+ * nothing. The seed is kept so that a draw can be replayed.
+ */
+final class FastRandom extends Random {
+
+    private static final long serialVersionUID = 4127591850340816527L;
+
+    private long mSeed;
+    private long mState0;
+    private long mState1;
+
+    FastRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * @return The seed this generator was (last) seeded with.
+     */
+    long getSeed() {
+        return mSeed;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Called by the Random constructor, before this class's fields are initialised.
+        mSeed = seed;
+        mState0 = splitMix64(seed);
+        mState1 = splitMix64(seed + 0x9E3779B97F4A7C15L);
+        if (mState0 == 0 && mState1 == 0) {
+            mState1 = 1;
+        }
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        long s0 = mState0;
+        long s1 = mState1;
+        long result = Long.rotateLeft(s0 * 5, 7) * 9;
+        s1 ^= s0;
+        mState0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+        mState1 = Long.rotateLeft(s1, 37);
+        return result;
+    }
+
+    static long splitMix64(long z) {
+        z = (z += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,308 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Checks whether a group can be drawn at all, without drawing it, and if not
+ * explains why and how to fix it.
+ *
+ * The check is a maximum bipartite matching between givers and receivers: the
+ * group can be drawn exactly when every giver can be matched. Each missing pair
+ * is one more restriction that has to go, and the members that can be left
+ * without a pair are the over-restricted ones. The check costs about
+ * O(n + restrictions) on typical groups, so it is cheap enough to run whenever
+ * a member edits their restrictions.
+ */
+public final class Feasibility {
+
+    private final boolean mFeasible;
+    private final int mDeficiency;
+    private final Set<Long> mOverRestricted;
+    private final Map<Long, Set<Long>> mRestrictionsToRemove;
+    private final String mDescription;
+
+    private Feasibility(boolean feasible, int deficiency, Set<Long> overRestricted,
+                        Map<Long, Set<Long>> restrictionsToRemove, String description) {
+        mFeasible = feasible;
+        mDeficiency = deficiency;
+        mOverRestricted = Collections.unmodifiableSet(overRestricted);
+        mRestrictionsToRemove = Collections.unmodifiableMap(restrictionsToRemove);
+        mDescription = description;
+    }
+
+    /**
+     * @param members A mapping between the members in the draw and their associated restrictions.
+     * @return Whether the members can be drawn, and if not why.
+     * @throws IllegalArgumentException If the members are null.
+     */
+    public static Feasibility check(Map<Long, Set<Long>> members) {
+        if (members == null) {
+            throw new IllegalArgumentException("Members are required.");
+        }
+        return check(CompiledGroup.index(members));
+    }
+
+    /**
+     * @param group A compiled group.
+     * @return Whether the group can be drawn, and if not why.
+     * @throws IllegalArgumentException If the group is null.
+     */
+    public static Feasibility check(CompiledGroup group) {
+        if (group == null) {
+            throw new IllegalArgumentException("Group is required.");
+        }
+        int n = group.size();
+        if (n < 2) {
+            return new Feasibility(false, n, new HashSet<Long>(), new HashMap<Long, Set<Long>>(),
+                    "Can't have less than two members.");
+        }
+        Matching matching = Matching.maximum(group, new FastRandom(0), new SearchCounters());
+        if (matching.isPerfect()) {
+            return new Feasibility(true, 0, new HashSet<Long>(), new HashMap<Long, Set<Long>>(), "Feasible.");
+        }
+
+        boolean[] givers = reachableGivers(group, matching);
+        boolean[] receivers = reachableReceivers(group, matching);
+        Set<Long> overRestricted = new TreeSet<Long>();
+        for (int i = 0; i < n; i++) {
+            if (givers[i] || receivers[i]) {
+                overRestricted.add(group.id(i));
+            }
+        }
+
+        Map<Long, Set<Long>> toRemove = new TreeMap<Long, Set<Long>>();
+        int deficiency = n - matching.size();
+        if (deficiency == 1) {
+            removeOne(group, matching, givers, receivers, toRemove);
+        } else {
+            removeAll(group, matching, toRemove);
+        }
+        return new Feasibility(false, deficiency, overRestricted, toRemove, describe(deficiency, overRestricted));
+    }
+
+    /**
+     * @return true if the group can be drawn.
+     */
+    public boolean isFeasible() {
+        return mFeasible;
+    }
+
+    /**
+     * @return The most members that can be given a receiver at once, subtracted from the
+     * number of members; zero if the group can be drawn.
+     */
+    public int getDeficiency() {
+        return mDeficiency;
+    }
+
+    /**
+     * @return The members who can be left without someone to give to, or without someone
+     * to give to them, in ascending order. Every impossible draw strands one of them.
+     */
+    public Set<Long> getOverRestricted() {
+        return mOverRestricted;
+    }
+
+    /**
+     * @return A smallest set of restrictions whose removal makes the group drawable, by
+     * member. Empty if the group can already be drawn, or has fewer than two members.
+     */
+    public Map<Long, Set<Long>> getRestrictionsToRemove() {
+        return mRestrictionsToRemove;
+    }
+
+    @Override
+    public String toString() {
+        return mDescription;
+    }
+
+    /**
+     * @return The givers left unmatched by some maximum matching: those reachable from
+     * an unmatched giver by alternating unmatched and matched pairs.
+     */
+    private static boolean[] reachableGivers(CompiledGroup group, Matching matching) {
+        int n = group.size();
+        boolean[] reached = new boolean[n];
+        int[] queue = new int[n];
+        int queueSize = 0;
+        for (int giver = 0; giver < n; giver++) {
+            if (matching.receiver(giver) < 0) {
+                reached[giver] = true;
+                queue[queueSize++] = giver;
+            }
+        }
+        // Receivers not yet reached; only a giver's exclusions are skipped over.
+        int[] pool = identity(n);
+        int poolSize = n;
+        for (int head = 0; head < queueSize; head++) {
+            int from = queue[head];
+            int i = 0;
+            while (i < poolSize) {
+                int to = pool[i];
+                if (group.isExcluded(from, to)) {
+                    i++;
+                    continue;
+                }
+                pool[i] = pool[--poolSize];
+                // The matching is maximum, so every receiver reached has a giver.
+                int owner = matching.giver(to);
+                if (!reached[owner]) {
+                    reached[owner] = true;
+                    queue[queueSize++] = owner;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @return The receivers left without a giver by some maximum matching.
+     */
+    private static boolean[] reachableReceivers(CompiledGroup group, Matching matching) {
+        int n = group.size();
+        boolean[] reached = new boolean[n];
+        int[] queue = new int[n];
+        int queueSize = 0;
+        for (int receiver = 0; receiver < n; receiver++) {
+            if (matching.giver(receiver) < 0) {
+                reached[receiver] = true;
+                queue[queueSize++] = receiver;
+            }
+        }
+        // Givers not yet reached; only a receiver's restrictors (and self) are skipped over.
+        int[] pool = identity(n);
+        int poolSize = n;
+        for (int head = 0; head < queueSize; head++) {
+            int to = queue[head];
+            int i = 0;
+            while (i < poolSize) {
+                int from = pool[i];
+                if (group.isExcluded(from, to)) {
+                    i++;
+                    continue;
+                }
+                pool[i] = pool[--poolSize];
+                int assigned = matching.receiver(from);
+                if (!reached[assigned]) {
+                    reached[assigned] = true;
+                    queue[queueSize++] = assigned;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Pairs each unmatched giver with an unmatched receiver other than itself. Every such
+     * pair is a restriction, or the matching wouldn't be maximum.
+     */
+    private static void removeAll(CompiledGroup group, Matching matching, Map<Long, Set<Long>> toRemove) {
+        int n = group.size();
+        int k = n - matching.size();
+        int[] givers = new int[k];
+        int[] receivers = new int[k];
+        int g = 0;
+        int r = 0;
+        for (int i = 0; i < n; i++) {
+            if (matching.receiver(i) < 0) {
+                givers[g++] = i;
+            }
+            if (matching.giver(i) < 0) {
+                receivers[r++] = i;
+            }
+        }
+        // With two or more of each, swapping a clash with the next receiver never makes a new one.
+        for (int i = 0; i < k; i++) {
+            if (givers[i] == receivers[i]) {
+                int next = (i + 1) % k;
+                int swap = receivers[i];
+                receivers[i] = receivers[next];
+                receivers[next] = swap;
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            add(group, toRemove, givers[i], receivers[i]);
+        }
+    }
+
+    /**
+     * With one member over, a single restriction between a giver and a receiver that can
+     * each be left over will do, unless the only such member is the same one. That member
+     * restricts everyone and is restricted by everyone, so needs two restrictions removed.
+     */
+    private static void removeOne(CompiledGroup group, Matching matching, boolean[] givers, boolean[] receivers,
+                                  Map<Long, Set<Long>> toRemove) {
+        int n = group.size();
+        int giver = -1;
+        int receiver = -1;
+        for (int i = 0; i < n; i++) {
+            if (matching.receiver(i) < 0) {
+                giver = i;
+            }
+            if (matching.giver(i) < 0) {
+                receiver = i;
+            }
+        }
+        if (giver != receiver) {
+            add(group, toRemove, giver, receiver);
+            return;
+        }
+        // The same member is left over on both sides; look for another who can be.
+        int member = giver;
+        for (int i = 0; i < n; i++) {
+            if (i != member && givers[i]) {
+                add(group, toRemove, i, member);
+                return;
+            }
+            if (i != member && receivers[i]) {
+                add(group, toRemove, member, i);
+                return;
+            }
+        }
+        // Any matched pair can take the member in: other -> member -> other's receiver.
+        int other = member == 0 ? 1 : 0;
+        add(group, toRemove, member, matching.receiver(other));
+        add(group, toRemove, other, member);
+    }
+
+    private static void add(CompiledGroup group, Map<Long, Set<Long>> toRemove, int giver, int receiver) {
+        Long id = group.id(giver);
+        Set<Long> restrictions = toRemove.get(id);
+        if (restrictions == null) {
+            restrictions = new TreeSet<Long>();
+            toRemove.put(id, restrictions);
+        }
+        restrictions.add(group.id(receiver));
+    }
+
+    private static int[] identity(int n) {
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    private static String describe(int deficiency, Set<Long> overRestricted) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(deficiency).append(" member(s) can't be given someone to give to; over-restricted members ");
+        sb.append(overRestricted);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,446 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes groups of members and restrictions, straight to and from a
+ * {@link CompiledGroup}.
+ *
+ * The text format has a line per member: the member id, then optionally
+ * whitespace and a comma separated list of the ids they are restricted from
+ * giving to. Blank lines and anything from a '#' to the end of the line are
+ * ignored. For example:
+ *
+ * <pre>
+ * # Two couples
+ * 1 2
+ * 2 1
+ * 3 4
+ * 4 3
+ * </pre>
+ *
+ * The text is parsed a buffer at a time from a channel into primitive arrays,
+ * so reading does not allocate per line or per id.
+ *
+ * The binary format is the compiled group itself, big endian: the magic
+ * number {@value #MAGIC}, the version, the member count n and restriction
+ * count r as ints, the n ascending member ids as longs, then the n + 1 row
+ * offsets and r restricted member indices as ints. It is read by mapping the
+ * file into memory, so is limited to 2GB.
+ */
+public final class GroupFiles {
+
+    // "DRAW"
+    static final int MAGIC = 0x44524157;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private GroupFiles() {
+    }
+
+    /**
+     * Reads a group in the text format.
+     *
+     * @throws IOException If the file can't be read, isn't in the text format or has a
+     *                     member more than once; the message gives the line number.
+     */
+    public static CompiledGroup readText(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return readText(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * As {@link #readText(Path)}, reading from the channel until its end.
+     */
+    public static CompiledGroup readText(ReadableByteChannel channel) throws IOException {
+        TextParser parser = new TextParser();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        while (channel.read(buffer) >= 0) {
+            parser.parse(bytes, buffer.position());
+            // Called on Buffer, as ByteBuffer's covariant overrides don't exist on a Java 8 runtime.
+            ((Buffer) buffer).clear();
+        }
+        parser.parse(new byte[]{'\n'}, 1);
+        return parser.compile();
+    }
+
+    /**
+     * Writes a group in the text format.
+     */
+    public static void writeText(CompiledGroup group, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeText(group, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * As {@link #writeText(CompiledGroup, Path)}, writing to the channel.
+     */
+    public static void writeText(CompiledGroup group, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] digits = new byte[20];
+        for (int giver = 0; giver < group.size(); giver++) {
+            ensureRemaining(channel, buffer, 21);
+            putDecimal(buffer, group.id(giver), digits);
+            int count = group.restrictionCount(giver);
+            for (int i = 0; i < count; i++) {
+                ensureRemaining(channel, buffer, 22);
+                buffer.put(i == 0 ? (byte) ' ' : (byte) ',');
+                putDecimal(buffer, group.id(group.restriction(giver, i)), digits);
+            }
+            ensureRemaining(channel, buffer, 1);
+            buffer.put((byte) '\n');
+        }
+        flush(channel, buffer);
+    }
+
+    /**
+     * Reads a group in the binary format.
+     *
+     * @throws IOException If the file can't be read or isn't a valid group in the binary format.
+     */
+    public static CompiledGroup readBinary(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Group file is larger than 2GB: " + path);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return readBinary(map);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static CompiledGroup readBinary(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a group file.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported group file version: " + version);
+        }
+        int n = buffer.getInt();
+        int r = buffer.getInt();
+        if (n < 0 || r < 0 || buffer.remaining() != 8L * n + 4L * (n + 1) + 4L * r) {
+            throw new EOFException("Group file is truncated or corrupt.");
+        }
+
+        long[] ids = new long[n];
+        buffer.asLongBuffer().get(ids);
+        ((Buffer) buffer).position(buffer.position() + 8 * n);
+        int[] offsets = new int[n + 1];
+        int[] restrictions = new int[r];
+        buffer.asIntBuffer().get(offsets).get(restrictions);
+
+        for (int i = 1; i < n; i++) {
+            if (ids[i] <= ids[i - 1]) {
+                throw new IOException("Group file member ids aren't ascending at member " + ids[i]);
+            }
+        }
+        if (offsets[0] != 0 || offsets[n] != r) {
+            throw new IOException("Group file restrictions are corrupt.");
+        }
+        for (int giver = 0; giver < n; giver++) {
+            if (offsets[giver + 1] < offsets[giver]) {
+                throw new IOException("Group file restrictions are corrupt at member " + ids[giver]);
+            }
+            int last = -1;
+            for (int i = offsets[giver]; i < offsets[giver + 1]; i++) {
+                int receiver = restrictions[i];
+                if (receiver <= last || receiver >= n || receiver == giver) {
+                    throw new IOException("Group file restrictions are corrupt at member " + ids[giver]);
+                }
+                last = receiver;
+            }
+        }
+        return CompiledGroup.compile(ids, offsets, restrictions);
+    }
+
+    /**
+     * Writes a group in the binary format.
+     */
+    public static void writeBinary(CompiledGroup group, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeBinary(group, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * As {@link #writeBinary(CompiledGroup, Path)}, writing to the channel.
+     */
+    public static void writeBinary(CompiledGroup group, WritableByteChannel channel) throws IOException {
+        int n = group.size();
+        int r = 0;
+        for (int giver = 0; giver < n; giver++) {
+            r += group.restrictionCount(giver);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(r);
+        for (int i = 0; i < n; i++) {
+            ensureRemaining(channel, buffer, 8);
+            buffer.putLong(group.id(i));
+        }
+        int offset = 0;
+        for (int giver = 0; giver <= n; giver++) {
+            ensureRemaining(channel, buffer, 4);
+            buffer.putInt(offset);
+            if (giver < n) {
+                offset += group.restrictionCount(giver);
+            }
+        }
+        for (int giver = 0; giver < n; giver++) {
+            int count = group.restrictionCount(giver);
+            for (int i = 0; i < count; i++) {
+                ensureRemaining(channel, buffer, 4);
+                buffer.putInt(group.restriction(giver, i));
+            }
+        }
+        flush(channel, buffer);
+    }
+
+    private static void ensureRemaining(WritableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    /**
+     * Puts the value as ASCII decimal, using digits as scratch space.
+     */
+    private static void putDecimal(ByteBuffer buffer, long value, byte[] digits) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        int count = 0;
+        do {
+            // Negated remainder, so that Long.MIN_VALUE works.
+            digits[count++] = (byte) ('0' + Math.abs(value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    /**
+     * Parses the text format into growable primitive arrays, in the order read.
+     */
+    private static final class TextParser {
+
+        // Per member, in the order read.
+        private long[] mMembers = new long[1024];
+        private int[] mLines = new int[1024];
+        private int[] mRowOffsets = new int[1025];
+        private int mMemberCount;
+
+        private long[] mRestrictions = new long[1024];
+        private int mRestrictionCount;
+
+        private int mLine = 1;
+        private int mField;
+        private boolean mComment;
+        private boolean mInNumber;
+        private boolean mNegative;
+        private long mValue;
+
+        void parse(byte[] bytes, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    endNumber();
+                    mLine++;
+                    mField = 0;
+                    mComment = false;
+                } else if (mComment) {
+                    continue;
+                } else if (b >= '0' && b <= '9') {
+                    // Accumulated negated, so that Long.MIN_VALUE can be read.
+                    long value = mValue * 10 - (b - '0');
+                    if (mValue < Long.MIN_VALUE / 10 || value > 0) {
+                        throw new IOException("Id too large at line " + mLine);
+                    }
+                    mValue = value;
+                    mInNumber = true;
+                } else if (b == ' ' || b == ',' || b == '\t' || b == '\r') {
+                    endNumber();
+                } else if (b == '#') {
+                    endNumber();
+                    mComment = true;
+                } else if (b == '-' && !mInNumber && !mNegative) {
+                    mNegative = true;
+                } else {
+                    throw new IOException("Unexpected character '" + (char) b + "' at line " + mLine);
+                }
+            }
+        }
+
+        private void endNumber() throws IOException {
+            if (!mInNumber) {
+                if (mNegative) {
+                    throw new IOException("Expected an id after '-' at line " + mLine);
+                }
+                return;
+            }
+            if (!mNegative && mValue == Long.MIN_VALUE) {
+                throw new IOException("Id too large at line " + mLine);
+            }
+            long id = mNegative ? mValue : -mValue;
+            if (mField++ == 0) {
+                if (mMemberCount == mMembers.length) {
+                    mMembers = Arrays.copyOf(mMembers, mMemberCount * 2);
+                    mLines = Arrays.copyOf(mLines, mMemberCount * 2);
+                    mRowOffsets = Arrays.copyOf(mRowOffsets, mMemberCount * 2 + 1);
+                }
+                mMembers[mMemberCount] = id;
+                mLines[mMemberCount] = mLine;
+                mRowOffsets[mMemberCount++] = mRestrictionCount;
+            } else {
+                if (mRestrictionCount == mRestrictions.length) {
+                    mRestrictions = Arrays.copyOf(mRestrictions, mRestrictionCount * 2);
+                }
+                mRestrictions[mRestrictionCount++] = id;
+            }
+            mInNumber = false;
+            mNegative = false;
+            mValue = 0;
+        }
+
+        /**
+         * Puts the members in ascending order and resolves the restricted ids to indices.
+         */
+        CompiledGroup compile() throws IOException {
+            int n = mMemberCount;
+            mRowOffsets[n] = mRestrictionCount;
+            long[] ids = Arrays.copyOf(mMembers, n);
+            Arrays.sort(ids);
+            for (int i = 1; i < n; i++) {
+                if (ids[i] == ids[i - 1]) {
+                    throw duplicate(ids[i]);
+                }
+            }
+
+            // Count the restrictions of each index, then place each row at its index.
+            int[] indices = new int[n];
+            int[] offsets = new int[n + 1];
+            for (int row = 0; row < n; row++) {
+                int giver = Arrays.binarySearch(ids, mMembers[row]);
+                indices[row] = giver;
+                offsets[giver + 1] = mRowOffsets[row + 1] - mRowOffsets[row];
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            // Restricted ids are resolved through an open addressing table rather than a
+            // binary search of the ids, which misses the cache at every step on large groups.
+            int mask = Integer.highestOneBit(Math.max(n, 1) * 2) * 2 - 1;
+            long[] keys = new long[mask + 1];
+            int[] values = new int[mask + 1];
+            for (int i = 0; i < n; i++) {
+                int slot = (int) FastRandom.splitMix64(ids[i]) & mask;
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = ids[i];
+                values[slot] = i + 1;
+            }
+            int[] restrictions = new int[mRestrictionCount];
+            for (int row = 0; row < n; row++) {
+                int at = offsets[indices[row]];
+                for (int i = mRowOffsets[row]; i < mRowOffsets[row + 1]; i++) {
+                    long id = mRestrictions[i];
+                    int slot = (int) FastRandom.splitMix64(id) & mask;
+                    while (values[slot] != 0 && keys[slot] != id) {
+                        slot = (slot + 1) & mask;
+                    }
+                    restrictions[at++] = values[slot] - 1;
+                }
+            }
+
+            // Sort each row, dropping self restrictions, unknown ids and repeats.
+            int count = 0;
+            for (int giver = 0; giver < n; giver++) {
+                int start = offsets[giver];
+                int end = offsets[giver + 1];
+                Arrays.sort(restrictions, start, end);
+                offsets[giver] = count;
+                int last = -1;
+                for (int i = start; i < end; i++) {
+                    int receiver = restrictions[i];
+                    if (receiver > last && receiver != giver) {
+                        restrictions[count++] = receiver;
+                        last = receiver;
+                    }
+                }
+            }
+            offsets[n] = count;
+            return CompiledGroup.compile(ids, offsets, Arrays.copyOf(restrictions, count));
+        }
+
+        private IOException duplicate(long id) {
+            int first = -1;
+            for (int row = 0; row < mMemberCount; row++) {
+                if (mMembers[row] == id) {
+                    if (first < 0) {
+                        first = mLines[row];
+                    } else {
+                        return new IOException("Duplicate member " + id + " at line " + mLines[row]
+                                + ", first at line " + first);
+                    }
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * A published draw that can be kept up to date as its group changes, without
+ * drawing everyone again.
+ *
+ * Applying a {@link DrawDelta} leaves everyone's assignment alone except where it
+ * can no longer stand: a member who joins needs a giver and a receiver, a member
+ * who leaves leaves their giver without a receiver and their receiver without a
+ * giver, and a new restriction on an assignment breaks just that assignment. Each
+ * break is mended with the shortest chain of reassignments found by a breadth first
+ * search out from the member left without a giver.
+ *
+ * The search takes each member at most once as a mover, and otherwise only looks
+ * at members restricting a receiver it reaches, so a repair costs O(m + r) for the
+ * m members and r restrictions it reaches. In a loosely restricted group a repair
+ * usually ends at the first mover, so the work done, and the number of assignments
+ * changed, depends on the change rather than the size of the group; a repair that
+ * fails has reached everyone, in O(n + r).
+ *
+ * Building the draw indexes the group once, in O(n). Not thread safe.
+ */
+public class IncrementalDraw {
+
+    private final Map<Long, Set<Long>> mMembers;
+    private final Map<Long, Long> mDraw;
+    private final Map<Long, Long> mGivers;
+
+    // Members in no particular order, for picking at random. A repair moves the
+    // members it has tried as movers to the end.
+    private final List<Long> mMemberList;
+    private final Map<Long, Integer> mPositions;
+
+    private final RandomSource mRandomSource;
+    private Random mRandom;
+
+    // The state, before the delta being applied, of each member, assignment and giver it touched.
+    private final Map<Long, Set<Long>> mUndoMembers = new HashMap<Long, Set<Long>>();
+    private final Map<Long, Long> mUndoDraw = new HashMap<Long, Long>();
+    private final Map<Long, Long> mUndoGivers = new HashMap<Long, Long>();
+
+    /**
+     * @param members A mapping between the members in the draw and their associated restrictions.
+     * @param draw    A successful draw of the members.
+     * @throws IllegalArgumentException If the draw isn't a valid draw of the members.
+     */
+    public IncrementalDraw(Map<Long, Set<Long>> members, Map<Long, Long> draw) {
+        this(members, draw, RandomSource.unseeded());
+    }
+
+    /**
+     * @param members      A mapping between the members in the draw and their associated restrictions.
+     * @param draw         A successful draw of the members.
+     * @param randomSource Provides the randomness for each repair.
+     * @throws IllegalArgumentException If the draw isn't a valid draw of the members.
+     */
+    public IncrementalDraw(Map<Long, Set<Long>> members, Map<Long, Long> draw, RandomSource randomSource) {
+        if (members == null || draw == null || randomSource == null) {
+            throw new IllegalArgumentException("Members, draw and random source are required.");
+        }
+        int capacity = members.size() * 4 / 3 + 1;
+        mMembers = new HashMap<Long, Set<Long>>(capacity);
+        mDraw = new HashMap<Long, Long>(capacity);
+        mGivers = new HashMap<Long, Long>(capacity);
+        mMemberList = new ArrayList<Long>(members.size());
+        mPositions = new HashMap<Long, Integer>(capacity);
+        mRandomSource = randomSource;
+
+        for (Map.Entry<Long, Set<Long>> entry : members.entrySet()) {
+            Long member = entry.getKey();
+            mMembers.put(member, entry.getValue() == null ? new HashSet<Long>() : new HashSet<Long>(entry.getValue()));
+            mPositions.put(member, mMemberList.size());
+            mMemberList.add(member);
+        }
+        for (Long giver : mMemberList) {
+            Long receiver = draw.get(giver);
+            if (receiver == null || !isAllowed(giver, receiver) || mGivers.put(receiver, giver) != null) {
+                throw new IllegalArgumentException("Not a valid draw of the members, at member: " + giver);
+            }
+            mDraw.put(giver, receiver);
+        }
+        if (draw.size() != mDraw.size()) {
+            throw new IllegalArgumentException("Draw has assignments for non-members.");
+        }
+    }
+
+    /**
+     * @return A mapping between the member and their assignment. Not modifiable.
+     */
+    public Map<Long, Long> getDraw() {
+        return Collections.unmodifiableMap(mDraw);
+    }
+
+    /**
+     * @return The members and their restrictions. Not modifiable.
+     */
+    public Map<Long, Set<Long>> getMembers() {
+        return Collections.unmodifiableMap(mMembers);
+    }
+
+    /**
+     * Applies the changes to the group and repairs the draw. Either all of the
+     * changes are applied or, if an exception is thrown, none are.
+     *
+     * @return The givers whose assignment changed, including new members.
+     * @throws DrawFailureException     If the group can't be drawn once changed.
+     * @throws IllegalArgumentException If a change refers to a missing member or adds an existing one.
+     */
+    public Set<Long> apply(DrawDelta delta) throws DrawFailureException {
+        mRandom = mRandomSource.nextRandom();
+        Set<Long> needReceiver = new LinkedHashSet<Long>();
+        Set<Long> needGiver = new LinkedHashSet<Long>();
+        boolean applied = false;
+        try {
+            for (DrawDelta.Change change : delta.getChanges()) {
+                apply(change, needReceiver, needGiver);
+            }
+            if (mMembers.size() < 2) {
+                throw new DrawFailureException("Can't have less than two members.");
+            }
+
+            for (Long receiver : needGiver) {
+                if (!repair(receiver, needReceiver)) {
+                    throw new DrawFailureException("No one can be reassigned to give to member " + receiver + ".");
+                }
+            }
+
+            Set<Long> changed = new HashSet<Long>();
+            for (Map.Entry<Long, Long> entry : mUndoDraw.entrySet()) {
+                Long receiver = mDraw.get(entry.getKey());
+                if (receiver != null && !receiver.equals(entry.getValue())) {
+                    changed.add(entry.getKey());
+                }
+            }
+            applied = true;
+            return changed;
+        } finally {
+            if (!applied) {
+                rollback();
+            }
+            mUndoMembers.clear();
+            mUndoDraw.clear();
+            mUndoGivers.clear();
+        }
+    }
+
+    private void apply(DrawDelta.Change change, Set<Long> needReceiver, Set<Long> needGiver) {
+        Long member = change.mMember;
+        switch (change.mType) {
+            case ADD_MEMBER:
+                if (mMembers.containsKey(member)) {
+                    throw new IllegalArgumentException("Already a member: " + member);
+                }
+                putMember(member, new HashSet<Long>(change.mRestrictions));
+                needReceiver.add(member);
+                needGiver.add(member);
+                break;
+            case REMOVE_MEMBER: {
+                requireMember(member);
+                Long giver = mGivers.get(member);
+                Long receiver = mDraw.get(member);
+                if (receiver != null) {
+                    unassign(member);
+                    needGiver.add(receiver);
+                }
+                if (giver != null) {
+                    unassign(giver);
+                    needReceiver.add(giver);
+                }
+                needReceiver.remove(member);
+                needGiver.remove(member);
+                removeMember(member);
+                break;
+            }
+            case ADD_RESTRICTION: {
+                requireMember(member);
+                Long restricted = change.mOther;
+                editableRestrictions(member).add(restricted);
+                if (restricted.equals(mDraw.get(member))) {
+                    unassign(member);
+                    needReceiver.add(member);
+                    needGiver.add(restricted);
+                }
+                break;
+            }
+            case REMOVE_RESTRICTION:
+                requireMember(member);
+                editableRestrictions(member).remove(change.mOther);
+                break;
+        }
+    }
+
+    /**
+     * Finds a giver for the receiver: either directly from those needing a receiver,
+     * or by moving a giver from their receiver, which then needs a giver, and so on.
+     *
+     * @return false if there is no chain of reassignments giving the receiver a giver.
+     */
+    private boolean repair(Long receiver, Set<Long> needReceiver) {
+        if (finish(receiver, receiver, null, null, needReceiver)) {
+            return true;
+        }
+
+        // For each receiver reached, the giver moving from it and the receiver they move to.
+        Map<Long, Long> movers = new HashMap<Long, Long>();
+        Map<Long, Long> moves = new HashMap<Long, Long>();
+        ArrayDeque<Long> queue = new ArrayDeque<Long>();
+        queue.add(receiver);
+
+        // Members before the end have yet to be tried as movers. Each is tried once:
+        // moved to the end once it moves, or if it has no receiver to move from, and
+        // otherwise passed over only because it can't give to the receiver reached.
+        int end = mMemberList.size();
+        while (!queue.isEmpty() && end > 0) {
+            Long to = queue.poll();
+            swapMembers(0, mRandom.nextInt(end));
+            int i = 0;
+            while (i < end) {
+                Long mover = mMemberList.get(i);
+                Long from = mDraw.get(mover);
+                if (from != null && !isAllowed(mover, to)) {
+                    i++;
+                    continue;
+                }
+                swapMembers(i, --end);
+                if (from == null) {
+                    continue;
+                }
+                movers.put(from, mover);
+                moves.put(from, to);
+                if (finish(receiver, from, moves, movers, needReceiver)) {
+                    return true;
+                }
+                queue.add(from);
+            }
+        }
+        return false;
+    }
+
+    private void swapMembers(int i, int j) {
+        Long a = mMemberList.get(i);
+        Long b = mMemberList.get(j);
+        mMemberList.set(i, b);
+        mMemberList.set(j, a);
+        mPositions.put(b, i);
+        mPositions.put(a, j);
+    }
+
+    /**
+     * If anyone needing a receiver can take the freed receiver, assigns it and makes
+     * the chain of moves back to the receiver.
+     */
+    private boolean finish(Long receiver, Long freed, Map<Long, Long> moves, Map<Long, Long> movers,
+                           Set<Long> needReceiver) {
+        for (Long giver : needReceiver) {
+            if (isAllowed(giver, freed)) {
+                needReceiver.remove(giver);
+                assign(giver, freed);
+                Long at = freed;
+                while (!at.equals(receiver)) {
+                    Long to = moves.get(at);
+                    assign(movers.get(at), to);
+                    at = to;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAllowed(Long giver, Long receiver) {
+        return !giver.equals(receiver) && mMembers.containsKey(receiver) && !mMembers.get(giver).contains(receiver);
+    }
+
+    private void requireMember(Long member) {
+        if (!mMembers.containsKey(member)) {
+            throw new IllegalArgumentException("Not a member: " + member);
+        }
+    }
+
+    // Changes below record the prior state for rollback.
+
+    private void assign(Long giver, Long receiver) {
+        recordDraw(giver);
+        recordGiver(receiver);
+        mDraw.put(giver, receiver);
+        mGivers.put(receiver, giver);
+    }
+
+    private void unassign(Long giver) {
+        recordDraw(giver);
+        Long receiver = mDraw.remove(giver);
+        recordGiver(receiver);
+        mGivers.remove(receiver);
+    }
+
+    private Set<Long> editableRestrictions(Long member) {
+        if (!mUndoMembers.containsKey(member)) {
+            Set<Long> original = mMembers.get(member);
+            mUndoMembers.put(member, original);
+            mMembers.put(member, new HashSet<Long>(original));
+        }
+        return mMembers.get(member);
+    }
+
+    private void putMember(Long member, Set<Long> restrictions) {
+        if (!mUndoMembers.containsKey(member)) {
+            mUndoMembers.put(member, mMembers.get(member));
+        }
+        mMembers.put(member, restrictions);
+        mPositions.put(member, mMemberList.size());
+        mMemberList.add(member);
+    }
+
+    private void removeMember(Long member) {
+        if (!mUndoMembers.containsKey(member)) {
+            mUndoMembers.put(member, mMembers.get(member));
+        }
+        mMembers.remove(member);
+        int position = mPositions.remove(member);
+        Long last = mMemberList.remove(mMemberList.size() - 1);
+        if (!last.equals(member)) {
+            mMemberList.set(position, last);
+            mPositions.put(last, position);
+        }
+    }
+
+    private void recordDraw(Long giver) {
+        if (!mUndoDraw.containsKey(giver)) {
+            mUndoDraw.put(giver, mDraw.get(giver));
+        }
+    }
+
+    private void recordGiver(Long receiver) {
+        if (!mUndoGivers.containsKey(receiver)) {
+            mUndoGivers.put(receiver, mGivers.get(receiver));
+        }
+    }
+
+    private void rollback() {
+        for (Map.Entry<Long, Set<Long>> entry : mUndoMembers.entrySet()) {
+            Long member = entry.getKey();
+            boolean present = mMembers.containsKey(member);
+            if (entry.getValue() == null) {
+                if (present) removeMember(member);
+            } else if (present) {
+                mMembers.put(member, entry.getValue());
+            } else {
+                putMember(member, entry.getValue());
+            }
+        }
+        restore(mDraw, mUndoDraw);
+        restore(mGivers, mUndoGivers);
+    }
+
+    private static void restore(Map<Long, Long> map, Map<Long, Long> undo) {
+        for (Map.Entry<Long, Long> entry : undo.entrySet()) {
+            if (entry.getValue() == null) {
+                map.remove(entry.getKey());
+            } else {
+                map.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
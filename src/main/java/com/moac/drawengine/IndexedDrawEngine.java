@@ -0,0 +1,338 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A DrawEngine that performs the same search as {@link BasicDrawEngine}, but over
+ * a {@link CompiledGroup} of dense int indices rather than boxed member ids.
+ *
+ * Givers are visited most restricted first and pick from a single shuffled
+ * receiver order. Instead of a set of failed paths per giver, each depth keeps
+ * a cursor into the receiver order: everything before the cursor has already
+ * been tried from that depth. The search loop itself does not allocate.
+ *
+ * Drawing a {@link CompiledGroup} many times skips compiling and sorting, and
+ * reuses per thread search space, so that each draw only allocates its result,
+ * a compact {@link DrawResult}.
+ */
+public class IndexedDrawEngine implements CompiledDrawEngine {
+
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    private final ThreadLocal<Scratch> mScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public IndexedDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public IndexedDrawEngine(RandomSource randomSource) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+
+        int[] receivers = new int[n];
+        for (int i = 0; i < n; i++) {
+            receivers[i] = i;
+        }
+        shuffle(receivers, random);
+
+        int[] givers = sortByRestrictions(group);
+        int[] assignments = new int[n];
+        probe.prepared();
+
+        SearchCounters counters = new SearchCounters();
+        boolean found = search(group, givers, receivers, assignments, counters);
+        probe.searched();
+        if (!found) {
+            probe.finish(counters, false);
+            throw new DrawFailureException();
+        }
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * Draws a group compiled with {@link CompiledGroup#compile(Map)}. Any number of
+     * threads may draw the same group at once.
+     *
+     * @return The draw, of which {@link DrawResult#asMap()} is the equivalent of {@link #generateDraw(Map)}.
+     * @throws DrawFailureException If the group can't be drawn, naming the members blocking it.
+     */
+    public DrawResult generateDraw(CompiledGroup group) throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (group == null || group.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+        if (!group.isFeasible()) {
+            throw new DrawFailureException(group.getBlockingSet());
+        }
+
+        int n = group.size();
+        Scratch scratch = mScratch.get();
+        scratch.prepare(n);
+        FastRandom random = scratch.mRandom;
+        random.setSeed(mRandomSource.nextSeed());
+        DrawProbe probe = DrawProbe.start(mListener, this, n, random.getSeed());
+
+        int[] receivers = scratch.mReceivers;
+        for (int i = 0; i < n; i++) {
+            receivers[i] = i;
+        }
+        shuffle(receivers, random);
+        probe.prepared();
+
+        SearchCounters counters = scratch.mCounters;
+        counters.reset();
+        int[] assignments = new int[n];
+        boolean found = search(group, group.order(), receivers, assignments, Long.MAX_VALUE, null,
+                scratch.mPicked, scratch.mCursors, counters) == FOUND;
+        probe.searched();
+        if (!found) {
+            probe.finish(counters, false);
+            throw new DrawFailureException();
+        }
+        probe.finish(counters, true);
+        return new DrawResult(group.ids(), assignments);
+    }
+
+    /**
+     * Search space reused by one thread's draws of compiled groups.
+     */
+    private static final class Scratch {
+        final FastRandom mRandom = new FastRandom(0);
+        final SearchCounters mCounters = new SearchCounters();
+        int[] mReceivers = new int[0];
+        int[] mCursors;
+        boolean[] mPicked;
+
+        void prepare(int n) {
+            if (mReceivers.length != n) {
+                mReceivers = new int[n];
+                mCursors = new int[n];
+                mPicked = new boolean[n];
+            }
+        }
+    }
+
+    // Outcomes of a bounded search.
+    static final int FOUND = 0;
+    static final int EXHAUSTED = 1;
+    static final int ABORTED = 2;
+
+    // Backtracks between checks of the stop flag; a power of two.
+    private static final int STOP_CHECK_INTERVAL = 1024;
+
+    /**
+     * Backtracking search assigning each of the givers, in order, a receiver.
+     *
+     * @param group       The compiled group.
+     * @param givers      The order to visit givers in.
+     * @param receivers   The order to try receivers in.
+     * @param assignments Populated with the receiver index for each giver index.
+     * @param counters    Counts the work done.
+     * @return true if all givers were assigned.
+     */
+    static boolean search(CompiledGroup group, int[] givers, int[] receivers, int[] assignments,
+                          SearchCounters counters) {
+        return search(group, givers, receivers, assignments, Long.MAX_VALUE, null, counters) == FOUND;
+    }
+
+    /**
+     * As {@link #search(CompiledGroup, int[], int[], int[], SearchCounters)}, giving up after a number of
+     * backtracks or when asked to stop.
+     *
+     * @param maxBacktracks The number of backtracks allowed before giving up.
+     * @param stop          Checked periodically, the search gives up once set. May be null.
+     * @return {@link #FOUND} if all givers were assigned, {@link #EXHAUSTED} if the search
+     * completed without finding an assignment or {@link #ABORTED} if it gave up.
+     */
+    static int search(CompiledGroup group, int[] givers, int[] receivers, int[] assignments,
+                      long maxBacktracks, AtomicBoolean stop, SearchCounters counters) {
+        int n = givers.length;
+        return search(group, givers, receivers, assignments, maxBacktracks, stop,
+                new boolean[group.size()], new int[n], counters);
+    }
+
+    /**
+     * As {@link #search(CompiledGroup, int[], int[], int[], long, AtomicBoolean, SearchCounters)},
+     * with the search space given.
+     *
+     * The givers and receivers may be a part of the group, of equal size; only their
+     * entries of the assignments are written.
+     *
+     * @param picked  Search space of the group size, overwritten.
+     * @param cursors Search space of the givers size, overwritten.
+     */
+    static int search(CompiledGroup group, int[] givers, int[] receivers, int[] assignments,
+                      long maxBacktracks, AtomicBoolean stop, boolean[] picked, int[] cursors,
+                      SearchCounters counters) {
+        int n = givers.length;
+        for (int i = 0; i < n; i++) {
+            picked[receivers[i]] = false;
+            cursors[i] = 0;
+            assignments[givers[i]] = -1;
+        }
+
+        long backtracks = 0;
+        int depth = 0;
+        // If the depth goes back less than 0 ... we won't find anything.
+        while (depth >= 0 && depth < n) {
+            int from = givers[depth];
+
+            // An existing assignment means we have rolled back to here, release it.
+            int last = assignments[from];
+            if (last >= 0) {
+                picked[last] = false;
+                assignments[from] = -1;
+            }
+
+            int to = -1;
+            int cursor = cursors[depth];
+            while (cursor < n) {
+                int pick = receivers[cursor++];
+                if (!picked[pick] && !group.isExcluded(from, pick)) {
+                    to = pick;
+                    break;
+                }
+            }
+
+            if (to < 0) {
+                // Go back to previous giver and choose differently.
+                cursors[depth] = 0;
+                depth--;
+                counters.backtrack();
+                if (++backtracks > maxBacktracks && depth >= 0
+                        || ((backtracks & (STOP_CHECK_INTERVAL - 1)) == 0 && stop != null && stop.get())) {
+                    return ABORTED;
+                }
+            } else {
+                // Set path and visit next giver.
+                cursors[depth] = cursor;
+                assignments[from] = to;
+                picked[to] = true;
+                depth++;
+                counters.node();
+            }
+        }
+        return depth == n ? FOUND : EXHAUSTED;
+    }
+
+    /**
+     * @return The member indices in a descending order of restrictedness.
+     */
+    static int[] sortByRestrictions(CompiledGroup group) {
+        int n = group.size();
+
+        // Counting sort; ties keep ascending index order.
+        int[] counts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            counts[n - group.restrictionCount(i)]++;
+        }
+        for (int i = 1; i <= n; i++) {
+            counts[i] += counts[i - 1];
+        }
+        int[] sorted = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            sorted[--counts[n - group.restrictionCount(i)]] = i;
+        }
+        return sorted;
+    }
+
+    /**
+     * Shuffles the members within each run of equal restrictedness, keeping the
+     * order given by {@link #sortByRestrictions(CompiledGroup)} otherwise.
+     */
+    static void shuffleTies(CompiledGroup group, int[] sorted, Random random) {
+        int start = 0;
+        while (start < sorted.length) {
+            int count = group.restrictionCount(sorted[start]);
+            int end = start + 1;
+            while (end < sorted.length && group.restrictionCount(sorted[end]) == count) {
+                end++;
+            }
+            for (int i = end - 1; i > start; i--) {
+                int j = start + random.nextInt(i - start + 1);
+                int tmp = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = tmp;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Fisher-Yates shuffle.
+     */
+    static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A DrawEngine performing the same search as {@link RecursiveDrawEngine}, using an
+ * explicit stack instead of recursion.
+ *
+ * The remaining givers (in members order) and remaining receivers (in shuffled
+ * order) are held as doubly linked lists over int arrays. Pairing unlinks a giver
+ * and receiver, and a rollback links them back in, so each level of the search
+ * only records its giver and receiver rather than copying what remains. Memory is
+ * O(n) and the depth of the search is no longer limited by the thread's stack.
+ */
+public class IterativeDrawEngine implements DrawEngine {
+
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public IterativeDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public IterativeDrawEngine(RandomSource randomSource) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+
+        // Givers are visited in the members order
+        int[] givers = new int[n];
+        int i = 0;
+        for (Long member : members.keySet()) {
+            givers[i++] = group.indexOf(member);
+        }
+
+        // Shuffle a list of members to randomize the result
+        int[] receivers = new int[n];
+        for (i = 0; i < n; i++) {
+            receivers[i] = i;
+        }
+        IndexedDrawEngine.shuffle(receivers, random);
+        probe.prepared();
+
+        int[] assignments = new int[n];
+        SearchCounters counters = new SearchCounters();
+        boolean found = search(group, givers, receivers, assignments, counters);
+        probe.searched();
+        if (!found) {
+            probe.finish(counters, false);
+            throw new DrawFailureException();
+        }
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * At each level, tries each remaining giver in turn with the first receiver
+     * it may give to, descending on each such pairing until all are paired.
+     *
+     * @return true if all givers were assigned.
+     */
+    static boolean search(CompiledGroup group, int[] givers, int[] receivers, int[] assignments,
+                          SearchCounters counters) {
+        int n = givers.length;
+        LinkedIndices remainingGivers = new LinkedIndices(givers);
+        LinkedIndices remainingReceivers = new LinkedIndices(receivers);
+
+        // The stack: the giver being tried at each depth, and the receiver it was paired with.
+        int[] selves = new int[n + 1];
+        int[] picks = new int[n];
+
+        int depth = 0;
+        selves[0] = remainingGivers.first();
+        while (depth < n) {
+            int self = selves[depth];
+            if (self == LinkedIndices.END) {
+                // Could not pair anyone at this depth, return control back to the previous depth.
+                if (--depth < 0) {
+                    return false;
+                }
+                counters.backtrack();
+                remainingReceivers.relink(picks[depth]);
+                remainingGivers.relink(selves[depth]);
+                selves[depth] = remainingGivers.next(selves[depth]);
+                continue;
+            }
+
+            int pick = pick(group, self, remainingReceivers);
+            if (pick == LinkedIndices.END) {
+                selves[depth] = remainingGivers.next(self);
+            } else {
+                // Remove this pairing from the draw and continue
+                assignments[self] = pick;
+                picks[depth] = pick;
+                remainingGivers.unlink(self);
+                remainingReceivers.unlink(pick);
+                selves[++depth] = remainingGivers.first();
+                counters.node();
+            }
+        }
+        return true;
+    }
+
+    private static int pick(CompiledGroup group, int self, LinkedIndices others) {
+        for (int pick = others.first(); pick != LinkedIndices.END; pick = others.next(pick)) {
+            if (!group.isExcluded(self, pick)) {
+                return pick;
+            }
+        }
+        return LinkedIndices.END;
+    }
+
+    /**
+     * An ordered list of the indices 0..n-1, doubly linked through arrays so an
+     * index can be unlinked and later relinked (in reverse order) in O(1).
+     */
+    private static final class LinkedIndices {
+
+        static final int END = -1;
+
+        private final int[] mNext;
+        private final int[] mPrev;
+        private final int mHead;
+
+        LinkedIndices(int[] order) {
+            int n = order.length;
+            // Index n is the head sentinel.
+            mHead = n;
+            mNext = new int[n + 1];
+            mPrev = new int[n + 1];
+            int last = mHead;
+            for (int index : order) {
+                mNext[last] = index;
+                mPrev[index] = last;
+                last = index;
+            }
+            mNext[last] = mHead;
+            mPrev[mHead] = last;
+        }
+
+        int first() {
+            return next(mHead);
+        }
+
+        int next(int index) {
+            int next = mNext[index];
+            return next == mHead ? END : next;
+        }
+
+        void unlink(int index) {
+            mNext[mPrev[index]] = mNext[index];
+            mPrev[mNext[index]] = mPrev[index];
+        }
+
+        void relink(int index) {
+            mNext[mPrev[index]] = index;
+            mPrev[mNext[index]] = index;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of non-negative values in power of two buckets.
+ *
+ * Bucket 0 counts zeros and bucket i counts values from 2^(i-1) to 2^i - 1,
+ * so percentiles are accurate to within a factor of two.
+ */
+public final class LogHistogram {
+
+    public static final int BUCKETS = 65;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param value Recorded in its bucket; negative values count as zero.
+     */
+    public void record(long value) {
+        mBuckets.incrementAndGet(bucket(value));
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     */
+    public void add(LogHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.mBuckets.get(i);
+            if (count != 0) {
+                mBuckets.addAndGet(i, count);
+            }
+        }
+    }
+
+    /**
+     * @return The number of values recorded in the bucket.
+     */
+    public long getBucket(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    /**
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return The upper bound of the bucket holding the percentile, or 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The largest value counted by the bucket.
+     */
+    public static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    static int bucket(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+}
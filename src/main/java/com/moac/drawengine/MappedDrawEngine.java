@@ -0,0 +1,298 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Draws groups too large to hold in the heap, such as tens of millions of members,
+ * from a file in the {@link GroupFiles} binary format to a file in the
+ * {@link DrawResult} format. Both files are memory mapped, so the operating system
+ * pages them in and out as needed and the heap used doesn't grow with the group.
+ *
+ * Restrictions in large groups are usually sparse, so rather than search, the draw
+ * is a random permutation written straight into the output, repaired in one pass:
+ * each member left with themselves or a restricted receiver swaps receivers with a
+ * random member for whom the swap suits both, or failing that rotates receivers with
+ * two others. A random permutation leaves about
+ * (n + restrictions) / n members to repair, so the draw costs one shuffle and one
+ * sequential read of the restrictions.
+ *
+ * When no swap repairs a member the draw starts again from a fresh shuffle. Swap
+ * repair can't prove a group impossible, and can fail on a densely restricted group
+ * that could be drawn; a {@link DrawFailureException} then suggests one of the
+ * in-memory engines.
+ */
+public class MappedDrawEngine {
+
+    // Random partners tried before trying every member.
+    private static final int REPAIR_ATTEMPTS = 64;
+
+    // Shuffles tried before giving up when a member can't be repaired.
+    private static final int MAX_ATTEMPTS = 16;
+
+    private final RandomSource mRandomSource;
+    private final int mSegmentShift;
+
+    public MappedDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public MappedDrawEngine(RandomSource randomSource) {
+        this(randomSource, MappedFile.DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift Log2 of the size of the mapped segments of each file.
+     */
+    MappedDrawEngine(RandomSource randomSource, int segmentShift) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+        mSegmentShift = segmentShift;
+    }
+
+    /**
+     * @param group A group written by {@link GroupFiles#writeBinary(CompiledGroup, Path)}.
+     * @param draw  The file to write the draw to, replacing any existing file. It can be
+     *              read back with {@link DrawResult#read(Path)} if under 2GB. Deleted if
+     *              the draw fails.
+     * @throws IOException          If the group can't be read, isn't valid, or the draw can't be written.
+     * @throws DrawFailureException If the group has less than two members, or repair fails.
+     */
+    public void generateDraw(Path group, Path draw) throws IOException, DrawFailureException {
+        MappedFile in = MappedFile.open(group, mSegmentShift);
+        try {
+            Rows rows = Rows.read(in);
+            if (rows.mSize < 2) {
+                throw new DrawFailureException("Can't have less than two members.");
+            }
+            boolean drawn = false;
+            try {
+                MappedFile out = MappedFile.create(draw, DrawResult.HEADER_BYTES + 12L * rows.mSize, mSegmentShift);
+                try {
+                    generateDraw(rows, out, mRandomSource.nextRandom());
+                    out.force();
+                    // The magic number last, so a partly written draw is never read as one.
+                    out.putInt(0, DrawResult.MAGIC);
+                    out.force();
+                    drawn = true;
+                } finally {
+                    out.close();
+                }
+            } finally {
+                if (!drawn) {
+                    deleteQuietly(draw);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes a failed draw, leaving the exception that failed it to be thrown.
+     */
+    private static void deleteQuietly(Path draw) {
+        try {
+            Files.deleteIfExists(draw);
+        } catch (IOException ignored) {
+            // Without its magic number the file can't be read as a draw.
+        }
+    }
+
+    /**
+     * Writes all but the magic number of the draw.
+     */
+    private static void generateDraw(Rows rows, MappedFile out, FastRandom random) throws DrawFailureException {
+        int n = rows.mSize;
+        out.putInt(4, DrawResult.VERSION);
+        out.putInt(8, n);
+        out.putInt(12, 0);
+        for (int i = 0; i < n; i++) {
+            out.putLong(DrawResult.HEADER_BYTES + 8L * i, rows.id(i));
+        }
+
+        // A uniformly random permutation, shuffled in place in the output.
+        long receivers = DrawResult.HEADER_BYTES + 8L * n;
+        for (int i = 0; i < n; i++) {
+            out.putInt(receivers + 4L * i, i);
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = out.getInt(receivers + 4L * i);
+                out.putInt(receivers + 4L * i, out.getInt(receivers + 4L * j));
+                out.putInt(receivers + 4L * j, tmp);
+            }
+
+            // Members before the giver are all valid, and swaps keep them so.
+            int giver = 0;
+            while (giver < n && (rows.allows(giver, out.getInt(receivers + 4L * giver))
+                    || repair(rows, out, receivers, giver, random))) {
+                giver++;
+            }
+            if (giver == n) {
+                return;
+            }
+        }
+        throw new DrawFailureException("No draw found after " + MAX_ATTEMPTS
+                + " shuffles; the group may be impossible or too restricted for an out-of-core draw.");
+    }
+
+    /**
+     * Swaps the giver's receiver with that of a member for whom both new pairs are allowed:
+     * first random members, then every member from a random start. Failing that, rotates
+     * the receivers of the giver and two random members.
+     *
+     * @return false if no member will swap or rotate.
+     */
+    private static boolean repair(Rows rows, MappedFile out, long receivers, int giver, FastRandom random) {
+        int n = rows.mSize;
+        int mine = out.getInt(receivers + 4L * giver);
+        int start = random.nextInt(n);
+        for (int attempt = 0; attempt < REPAIR_ATTEMPTS + n; attempt++) {
+            int other = attempt < REPAIR_ATTEMPTS ? random.nextInt(n) : (start + attempt) % n;
+            if (other == giver) {
+                continue;
+            }
+            int theirs = out.getInt(receivers + 4L * other);
+            if (rows.allows(giver, theirs) && rows.allows(other, mine)) {
+                out.putInt(receivers + 4L * giver, theirs);
+                out.putInt(receivers + 4L * other, mine);
+                return true;
+            }
+        }
+        for (int attempt = 0; attempt < REPAIR_ATTEMPTS; attempt++) {
+            int first = random.nextInt(n);
+            int second = random.nextInt(n);
+            if (first == giver || second == giver || first == second) {
+                continue;
+            }
+            int firsts = out.getInt(receivers + 4L * first);
+            int seconds = out.getInt(receivers + 4L * second);
+            if (rows.allows(giver, firsts) && rows.allows(first, seconds) && rows.allows(second, mine)) {
+                out.putInt(receivers + 4L * giver, firsts);
+                out.putInt(receivers + 4L * first, seconds);
+                out.putInt(receivers + 4L * second, mine);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The rows of a mapped group file, read in place.
+     */
+    private static final class Rows {
+        final MappedFile mFile;
+        final int mSize;
+        final long mOffsets;
+        final long mRestrictions;
+
+        private Rows(MappedFile file, int size) {
+            mFile = file;
+            mSize = size;
+            mOffsets = GroupFiles.HEADER_BYTES + 8L * size;
+            mRestrictions = mOffsets + 4L * (size + 1);
+        }
+
+        /**
+         * Checks the header and, in one sequential pass, the ids and rows.
+         */
+        static Rows read(MappedFile file) throws IOException {
+            if (file.size() < GroupFiles.HEADER_BYTES || file.getInt(0) != GroupFiles.MAGIC) {
+                throw new IOException("Not a group file.");
+            }
+            int version = file.getInt(4);
+            if (version != GroupFiles.VERSION) {
+                throw new IOException("Unsupported group file version: " + version);
+            }
+            int n = file.getInt(8);
+            int r = file.getInt(12);
+            if (n < 0 || r < 0 || file.size() != GroupFiles.HEADER_BYTES + 8L * n + 4L * (n + 1) + 4L * r) {
+                throw new EOFException("Group file is truncated or corrupt.");
+            }
+            Rows rows = new Rows(file, n);
+            for (int i = 1; i < n; i++) {
+                if (rows.id(i) <= rows.id(i - 1)) {
+                    throw new IOException("Group file member ids aren't ascending at member " + rows.id(i));
+                }
+            }
+            if (rows.offset(0) != 0 || rows.offset(n) != r) {
+                throw new IOException("Group file restrictions are corrupt.");
+            }
+            for (int giver = 0; giver < n; giver++) {
+                int end = rows.offset(giver + 1);
+                if (end < rows.offset(giver)) {
+                    throw new IOException("Group file restrictions are corrupt at member " + rows.id(giver));
+                }
+                int last = -1;
+                for (int i = rows.offset(giver); i < end; i++) {
+                    int receiver = rows.restriction(i);
+                    if (receiver <= last || receiver >= n || receiver == giver) {
+                        throw new IOException("Group file restrictions are corrupt at member " + rows.id(giver));
+                    }
+                    last = receiver;
+                }
+            }
+            return rows;
+        }
+
+        long id(int index) {
+            return mFile.getLong(GroupFiles.HEADER_BYTES + 8L * index);
+        }
+
+        int offset(int index) {
+            return mFile.getInt(mOffsets + 4L * index);
+        }
+
+        int restriction(int i) {
+            return mFile.getInt(mRestrictions + 4L * i);
+        }
+
+        /**
+         * @return true if the giver may be assigned the receiver; a binary search of the giver's row.
+         */
+        boolean allows(int giver, int receiver) {
+            if (giver == receiver) {
+                return false;
+            }
+            int low = offset(giver);
+            int high = offset(giver + 1) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int restricted = restriction(mid);
+                if (restricted < receiver) {
+                    low = mid + 1;
+                } else if (restricted > receiver) {
+                    high = mid - 1;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
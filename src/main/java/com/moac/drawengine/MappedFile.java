@@ -0,0 +1,121 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory in segments, so it can be larger than the 2GB one
+ * MappedByteBuffer can address. Values are big endian and must be aligned to
+ * their size from the start of the file, so none straddles two segments.
+ */
+final class MappedFile implements Closeable {
+
+    // 1GB segments.
+    static final int DEFAULT_SEGMENT_SHIFT = 30;
+
+    private final FileChannel mChannel;
+    private final MappedByteBuffer[] mSegments;
+    private final int mShift;
+    private final long mMask;
+    private final long mSize;
+
+    private MappedFile(FileChannel channel, FileChannel.MapMode mode, long size, int shift) throws IOException {
+        mChannel = channel;
+        mShift = shift;
+        mMask = (1L << shift) - 1;
+        mSize = size;
+        int count = (int) ((size + mMask) >>> shift);
+        mSegments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << shift;
+            mSegments[i] = channel.map(mode, start, Math.min(1L << shift, size - start));
+        }
+    }
+
+    /**
+     * Maps an existing file for reading.
+     *
+     * @param shift Log2 of the segment size, at least 3 so longs stay aligned.
+     */
+    static MappedFile open(Path path, int shift) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size(), shift);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates a file of the given size, replacing any existing file, and maps it for writing.
+     *
+     * @param shift Log2 of the segment size, at least 3 so longs stay aligned.
+     */
+    static MappedFile create(Path path, long size, int shift) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size, shift);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    long size() {
+        return mSize;
+    }
+
+    int getInt(long position) {
+        return mSegments[(int) (position >>> mShift)].getInt((int) (position & mMask));
+    }
+
+    long getLong(long position) {
+        return mSegments[(int) (position >>> mShift)].getLong((int) (position & mMask));
+    }
+
+    void putInt(long position, int value) {
+        mSegments[(int) (position >>> mShift)].putInt((int) (position & mMask), value);
+    }
+
+    void putLong(long position, long value) {
+        mSegments[(int) (position >>> mShift)].putLong((int) (position & mMask), value);
+    }
+
+    /**
+     * Writes any changes through to the file.
+     */
+    void force() {
+        for (MappedByteBuffer segment : mSegments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Closes the channel. The mappings stay valid until they are garbage collected.
+     */
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,268 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A giver to receiver matching over a {@link CompiledGroup}, grown one
+ * augmenting path at a time.
+ *
+ * Restrictions are usually sparse, so the allowed edges are close to a
+ * complete bipartite graph. Rather than walk the allowed edges, each breadth
+ * first search keeps a pool of receivers it hasn't reached yet and only the
+ * excluded receivers of a giver are ever skipped over. A search therefore
+ * costs O(n + restrictions) rather than O(n^2).
+ *
+ * When a search fails, the givers it reached and the receivers they can give
+ * to form a Hall violator: there is one more giver than receivers.
+ */
+final class Matching {
+
+    private final CompiledGroup mGroup;
+    private final int[] mAssignments;
+    private final int[] mOwners;
+    private int mSize;
+
+    // Search scratch space, reused by every augment.
+    private final int[] mPool;
+    private final int[] mQueue;
+    private final int[] mParents;
+    private int mPoolSize;
+    private int mQueueSize;
+
+    Matching(CompiledGroup group) {
+        int n = group.size();
+        mGroup = group;
+        mAssignments = new int[n];
+        mOwners = new int[n];
+        mPool = new int[n];
+        mQueue = new int[n];
+        mParents = new int[n];
+        Arrays.fill(mAssignments, -1);
+        Arrays.fill(mOwners, -1);
+        for (int i = 0; i < n; i++) {
+            mPool[i] = i;
+        }
+    }
+
+    /**
+     * Creates a random matching of the group. It will be perfect if the group
+     * can be drawn, otherwise the first Hall violator found is available from
+     * {@link #blockingGivers()} and {@link #blockingReceivers()}.
+     *
+     * @param counters Counts pairs made, one node per greedy pair or augmenting path.
+     */
+    static Matching random(CompiledGroup group, Random random, SearchCounters counters) {
+        return random(group, random, counters, false);
+    }
+
+    /**
+     * Creates a random maximum matching of the group: if the group can't be drawn,
+     * the search carries on past the first Hall violator and matches as many
+     * givers as possible.
+     *
+     * @param counters Counts pairs made, one node per greedy pair or augmenting path.
+     */
+    static Matching maximum(CompiledGroup group, Random random, SearchCounters counters) {
+        return random(group, random, counters, true);
+    }
+
+    private static Matching random(CompiledGroup group, Random random, SearchCounters counters, boolean maximum) {
+        Matching matching = new Matching(group);
+        int n = group.size();
+        IndexedDrawEngine.shuffle(matching.mPool, random);
+
+        // Greedily give each giver, most restricted first, the first receiver left in a
+        // random order that they may give to. Skipped receivers are all restrictions, so
+        // this costs O(n + restrictions) and leaves few givers over on clustered groups...
+        int[] givers = IndexedDrawEngine.sortByRestrictions(group);
+        IndexedDrawEngine.shuffleTies(group, givers, random);
+        int[] pool = matching.mPool;
+        int poolSize = n;
+        for (int i = 0; i < n; i++) {
+            int giver = givers[i];
+            for (int j = 0; j < poolSize; j++) {
+                int receiver = pool[j];
+                if (!group.isExcluded(giver, receiver)) {
+                    pool[j] = pool[--poolSize];
+                    pool[poolSize] = receiver;
+                    matching.assign(giver, receiver);
+                    counters.node();
+                    break;
+                }
+            }
+        }
+
+        // ... then augment whoever is left over. A giver with no augmenting path never
+        // gains one as the matching grows, so each is only tried once.
+        for (int i = 0; i < n; i++) {
+            if (matching.mAssignments[givers[i]] < 0) {
+                if (matching.augment(givers[i])) {
+                    counters.node();
+                } else if (!maximum) {
+                    break;
+                }
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @return The number of matched pairs.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if every giver has a receiver.
+     */
+    boolean isPerfect() {
+        return mSize == mAssignments.length;
+    }
+
+    /**
+     * @return The receiver index assigned to the giver, or -1.
+     */
+    int receiver(int giver) {
+        return mAssignments[giver];
+    }
+
+    /**
+     * @return The giver index assigned to the receiver, or -1.
+     */
+    int giver(int receiver) {
+        return mOwners[receiver];
+    }
+
+    /**
+     * @return The receiver index for each giver index. Not copied.
+     */
+    int[] assignments() {
+        return mAssignments;
+    }
+
+    /**
+     * @return The giver index for each receiver index. Not copied.
+     */
+    int[] owners() {
+        return mOwners;
+    }
+
+    void assign(int giver, int receiver) {
+        mAssignments[giver] = receiver;
+        mOwners[receiver] = giver;
+        mSize++;
+    }
+
+    /**
+     * Finds an augmenting path from the unmatched giver by breadth first search
+     * and flips it, growing the matching by one.
+     *
+     * @return false if there is no augmenting path. The givers and receivers
+     * reached are then the blocking set.
+     */
+    boolean augment(int giver) {
+        int n = mAssignments.length;
+        mPoolSize = n;
+        mQueueSize = 0;
+        mQueue[mQueueSize++] = giver;
+
+        for (int head = 0; head < mQueueSize; head++) {
+            int from = mQueue[head];
+            int i = 0;
+            while (i < mPoolSize) {
+                int to = mPool[i];
+                if (mGroup.isExcluded(from, to)) {
+                    i++;
+                    continue;
+                }
+                // Reached; swap it out of the pool.
+                mPool[i] = mPool[--mPoolSize];
+                mPool[mPoolSize] = to;
+                mParents[to] = from;
+
+                int owner = mOwners[to];
+                if (owner < 0) {
+                    flip(to);
+                    return true;
+                }
+                mQueue[mQueueSize++] = owner;
+            }
+        }
+        return false;
+    }
+
+    private void flip(int receiver) {
+        mSize++;
+        while (receiver >= 0) {
+            int giver = mParents[receiver];
+            int previous = mAssignments[giver];
+            mAssignments[giver] = receiver;
+            mOwners[receiver] = giver;
+            receiver = previous;
+        }
+    }
+
+    /**
+     * @return The givers reached by the last failed augment.
+     */
+    int[] blockingGivers() {
+        int[] givers = Arrays.copyOf(mQueue, mQueueSize);
+        Arrays.sort(givers);
+        return givers;
+    }
+
+    /**
+     * @return The only receivers available to {@link #blockingGivers()}.
+     */
+    int[] blockingReceivers() {
+        int[] receivers = Arrays.copyOfRange(mPool, mPoolSize, mAssignments.length);
+        Arrays.sort(receivers);
+        return receivers;
+    }
+
+    /**
+     * @return A description of the blocking set of the last failed augment.
+     */
+    String describeBlockingSet() {
+        int[] givers = blockingGivers();
+        int[] receivers = blockingReceivers();
+        StringBuilder sb = new StringBuilder();
+        sb.append(givers.length).append(" member(s) ");
+        appendIds(sb, givers);
+        sb.append(" can only give to ").append(receivers.length).append(" member(s) ");
+        appendIds(sb, receivers);
+        return sb.toString();
+    }
+
+    private static final int MAX_DESCRIBED_IDS = 20;
+
+    private void appendIds(StringBuilder sb, int[] indices) {
+        sb.append('[');
+        for (int i = 0; i < indices.length && i < MAX_DESCRIBED_IDS; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(mGroup.id(indices[i]));
+        }
+        if (indices.length > MAX_DESCRIBED_IDS) {
+            sb.append(", ...");
+        }
+        sb.append(']');
+    }
+}
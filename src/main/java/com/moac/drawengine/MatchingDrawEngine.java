@@ -0,0 +1,125 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A DrawEngine that treats the draw as a bipartite perfect matching between
+ * givers and receivers, with self and restricted pairs removed.
+ *
+ * A random greedy matching is completed with augmenting paths, so a draw takes
+ * polynomial time whether or not it is possible. An impossible draw fails with
+ * a message naming the blocking members: a set of givers who between them can
+ * only give to fewer receivers.
+ */
+public class MatchingDrawEngine implements CompiledDrawEngine {
+
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public MatchingDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public MatchingDrawEngine(RandomSource randomSource) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        probe.prepared();
+
+        SearchCounters counters = new SearchCounters();
+        Matching matching = Matching.random(group, random, counters);
+        probe.searched();
+        if (!matching.isPerfect()) {
+            probe.finish(counters, false);
+            throw new DrawFailureException(matching.describeBlockingSet());
+        }
+
+        int n = group.size();
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(matching.receiver(giver)));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * Draws a group compiled with {@link CompiledGroup#compile(Map)}, without boxing.
+     *
+     * @return The draw, of which {@link DrawResult#asMap()} is the equivalent of {@link #generateDraw(Map)}.
+     * @throws DrawFailureException If the group can't be drawn, naming the members blocking it.
+     */
+    public DrawResult generateDraw(CompiledGroup group) throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (group == null || group.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+        if (!group.isFeasible()) {
+            throw new DrawFailureException(group.getBlockingSet());
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, group.size(), random.getSeed());
+        probe.prepared();
+
+        SearchCounters counters = new SearchCounters();
+        Matching matching = Matching.random(group, random, counters);
+        probe.searched();
+        if (!matching.isPerfect()) {
+            probe.finish(counters, false);
+            throw new DrawFailureException(matching.describeBlockingSet());
+        }
+        probe.finish(counters, true);
+        return new DrawResult(group.ids(), matching.assignments(), matching.owners());
+    }
+}
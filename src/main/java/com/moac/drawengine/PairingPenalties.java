@@ -0,0 +1,118 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/**
+ * Soft restrictions for a {@link WeightedDrawEngine}: a penalty for each giver to
+ * receiver pair that should be avoided but may be used if the draw needs it, such
+ * as a pair from a previous year.
+ *
+ * Pairs without a penalty cost nothing. Penalties are read at the start of each draw,
+ * so should not be changed while a draw is in progress.
+ */
+public class PairingPenalties {
+
+    private final Map<Long, Map<Long, Integer>> mPenalties = new HashMap<Long, Map<Long, Integer>>();
+
+    /**
+     * Penalises the pairs of previous draws, the most recent the most: each pair of
+     * the i'th draw (counting from one) costs i, and a pair drawn in several years
+     * costs the sum.
+     *
+     * @param draws Previous draws, oldest first.
+     */
+    public static PairingPenalties fromHistory(List<Map<Long, Long>> draws) {
+        if (draws == null) {
+            throw new IllegalArgumentException("Draws are required.");
+        }
+        PairingPenalties penalties = new PairingPenalties();
+        for (int i = 0; i < draws.size(); i++) {
+            for (Map.Entry<Long, Long> pair : draws.get(i).entrySet()) {
+                penalties.add(pair.getKey(), pair.getValue(), i + 1);
+            }
+        }
+        return penalties;
+    }
+
+    /**
+     * @param giver    The member giving.
+     * @param receiver The member receiving.
+     * @param penalty  The cost of assigning the receiver to the giver; zero removes it.
+     * @throws IllegalArgumentException If the penalty is negative.
+     */
+    public PairingPenalties set(long giver, long receiver, int penalty) {
+        if (penalty < 0) {
+            throw new IllegalArgumentException("Penalty can't be negative.");
+        }
+        Map<Long, Integer> row = mPenalties.get(giver);
+        if (penalty == 0) {
+            if (row != null) {
+                row.remove(receiver);
+            }
+            return this;
+        }
+        if (row == null) {
+            row = new HashMap<Long, Integer>();
+            mPenalties.put(giver, row);
+        }
+        row.put(receiver, penalty);
+        return this;
+    }
+
+    /**
+     * Adds to the penalty of a pair.
+     *
+     * @throws IllegalArgumentException If the penalty is negative, or the total overflows.
+     */
+    public PairingPenalties add(long giver, long receiver, int penalty) {
+        long total = (long) get(giver, receiver) + penalty;
+        if (penalty < 0 || total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Penalty can't be negative or overflow.");
+        }
+        return set(giver, receiver, (int) total);
+    }
+
+    /**
+     * @return The penalty of the pair, zero if it has none.
+     */
+    public int get(long giver, long receiver) {
+        Map<Long, Integer> row = mPenalties.get(giver);
+        Integer penalty = row == null ? null : row.get(receiver);
+        return penalty == null ? 0 : penalty;
+    }
+
+    /**
+     * @param draw A draw, mapping givers to receivers.
+     * @return The sum of the penalties of the draw's pairs.
+     */
+    public long total(Map<Long, Long> draw) {
+        long total = 0;
+        for (Map.Entry<Long, Long> pair : draw.entrySet()) {
+            total += get(pair.getKey(), pair.getValue());
+        }
+        return total;
+    }
+
+    /**
+     * @return The penalised receivers of the giver and their penalties, or null if none.
+     */
+    Map<Long, Integer> row(long giver) {
+        return mPenalties.get(giver);
+    }
+}
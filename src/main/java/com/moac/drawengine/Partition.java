@@ -0,0 +1,192 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The parts of a group that can be drawn independently of each other.
+ *
+ * Given a perfect matching, let giver g lead to giver h when g may give to
+ * h's matched receiver. A giver may be assigned a receiver in some draw exactly
+ * when the two givers involved are in the same strongly connected component of
+ * this graph (the Dulmage-Mendelsohn decomposition). So each component, with
+ * the receivers matched to it, is a part that can be drawn on its own, and
+ * every draw of the group is a combination of independent draws of its parts.
+ * A part of one giver is forced: its matched receiver is the only one it can
+ * ever be assigned.
+ *
+ * The graph is nearly complete when restrictions are sparse, so its components
+ * are found by Kosaraju's algorithm over the givers not yet visited, skipping
+ * only the excluded ones, in O(n + restrictions) rather than O(n^2).
+ */
+final class Partition {
+
+    // Giver indices grouped by part, each part in the order given.
+    private final int[] mGivers;
+    private final int[] mOffsets;
+    private final int mForced;
+
+    private Partition(int[] givers, int[] offsets, int forced) {
+        mGivers = givers;
+        mOffsets = offsets;
+        mForced = forced;
+    }
+
+    /**
+     * @param matching A perfect matching of the group.
+     * @param order    The order to list each part's givers in.
+     */
+    static Partition of(CompiledGroup group, Matching matching, int[] order) {
+        int n = group.size();
+        int[] receivers = matching.assignments();
+        int[] next = new int[n + 1];
+        int[] stack = new int[n];
+        int[] cursors = new int[n];
+
+        // First pass: the order givers finish in, leading forwards.
+        int[] finished = new int[n];
+        int finishedCount = 0;
+        reset(next);
+        for (int start = 0; start < n; start++) {
+            if (next[start] != start) {
+                continue;
+            }
+            next[start] = start + 1;
+            cursors[start] = 0;
+            int top = 0;
+            stack[0] = start;
+            while (top >= 0) {
+                int from = stack[top];
+                int to = find(next, cursors[from]);
+                while (to < n && group.isExcluded(from, receivers[to])) {
+                    to = find(next, to + 1);
+                }
+                if (to == n) {
+                    finished[finishedCount++] = from;
+                    top--;
+                } else {
+                    cursors[from] = to + 1;
+                    next[to] = to + 1;
+                    cursors[to] = 0;
+                    stack[++top] = to;
+                }
+            }
+        }
+
+        // Second pass: in reverse finishing order, each search leading backwards finds a component.
+        int[] components = new int[n];
+        int[] sizes = new int[n + 1];
+        int count = 0;
+        reset(next);
+        for (int i = n - 1; i >= 0; i--) {
+            int start = finished[i];
+            if (next[start] != start) {
+                continue;
+            }
+            next[start] = start + 1;
+            cursors[start] = 0;
+            int top = 0;
+            stack[0] = start;
+            components[start] = count;
+            sizes[count + 1]++;
+            while (top >= 0) {
+                int to = stack[top];
+                int from = find(next, cursors[to]);
+                while (from < n && group.isExcluded(from, receivers[to])) {
+                    from = find(next, from + 1);
+                }
+                if (from == n) {
+                    top--;
+                } else {
+                    cursors[to] = from + 1;
+                    next[from] = from + 1;
+                    cursors[from] = 0;
+                    components[from] = count;
+                    sizes[count + 1]++;
+                    stack[++top] = from;
+                }
+            }
+            count++;
+        }
+
+        // Group the givers by component, keeping the given order within each.
+        int forced = 0;
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            if (sizes[i + 1] == 1) {
+                forced++;
+            }
+            offsets[i + 1] = offsets[i] + sizes[i + 1];
+        }
+        int[] fill = new int[count];
+        System.arraycopy(offsets, 0, fill, 0, count);
+        int[] givers = new int[n];
+        for (int giver : order) {
+            givers[fill[components[giver]]++] = giver;
+        }
+        return new Partition(givers, offsets, forced);
+    }
+
+    private static void reset(int[] next) {
+        for (int i = 0; i < next.length; i++) {
+            next[i] = i;
+        }
+    }
+
+    /**
+     * @return The first giver not yet visited at or after the index.
+     */
+    private static int find(int[] next, int index) {
+        int root = index;
+        while (next[root] != root) {
+            root = next[root];
+        }
+        while (next[index] != root) {
+            int tmp = next[index];
+            next[index] = root;
+            index = tmp;
+        }
+        return root;
+    }
+
+    /**
+     * @return The number of parts.
+     */
+    int count() {
+        return mOffsets.length - 1;
+    }
+
+    /**
+     * @return The number of givers in the part.
+     */
+    int size(int part) {
+        return mOffsets[part + 1] - mOffsets[part];
+    }
+
+    /**
+     * @return The i'th giver of the part.
+     */
+    int giver(int part, int i) {
+        return mGivers[mOffsets[part] + i];
+    }
+
+    /**
+     * @return The number of parts with a single, forced, giver.
+     */
+    int forcedCount() {
+        return mForced;
+    }
+}
@@ -0,0 +1,237 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DrawEngine that splits the group into the parts that can be drawn
+ * independently of each other (see {@link Partition}), then draws the parts with
+ * the {@link IndexedDrawEngine} search, large parts in parallel.
+ *
+ * Groups made up of clusters that only give within themselves are searched a
+ * cluster at a time, and givers with only one possible receiver are assigned
+ * up front. As no draw of the group ever assigns across parts, drawing each part
+ * independently, from its own random stream, loses none of the randomness of
+ * drawing the group as a whole.
+ *
+ * An impossible draw fails with the blocking members, as for {@link MatchingDrawEngine}.
+ */
+public class PartitionedDrawEngine implements DrawEngine {
+
+    // Parts smaller than this are drawn on the calling thread.
+    static final int PARALLEL_PART_SIZE = 1024;
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "partitioned-draw-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Executor mExecutor;
+    private final int mParallelism;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public PartitionedDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public PartitionedDrawEngine(RandomSource randomSource) {
+        this(DEFAULT_EXECUTOR, Runtime.getRuntime().availableProcessors(), randomSource);
+    }
+
+    /**
+     * @param executor     Draws the large parts.
+     * @param parallelism  The most large parts to draw at once.
+     * @param randomSource Provides the randomness for each draw. Each part is drawn from
+     *                     its own seed taken in turn, so a seeded draw can be replayed.
+     */
+    public PartitionedDrawEngine(Executor executor, int parallelism, RandomSource randomSource) {
+        if (executor == null || parallelism < 1 || randomSource == null) {
+            throw new IllegalArgumentException("An executor, a positive parallelism and a random source are required.");
+        }
+        mExecutor = executor;
+        mParallelism = parallelism;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none. The
+     *                 statistics are totalled over the parts.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        final CompiledGroup group = CompiledGroup.index(members);
+        final int n = group.size();
+
+        SearchCounters counters = new SearchCounters();
+        final Matching matching = Matching.random(group, random, counters);
+        if (!matching.isPerfect()) {
+            probe.finish(counters, false);
+            throw new DrawFailureException(matching.describeBlockingSet());
+        }
+        final Partition partition = Partition.of(group, matching, IndexedDrawEngine.sortByRestrictions(group));
+        probe.prepared();
+
+        // Seeds are taken in part order, whichever thread draws the part.
+        final long[] seeds = new long[partition.count()];
+        final List<Integer> largeParts = new ArrayList<Integer>();
+        for (int part = 0; part < partition.count(); part++) {
+            seeds[part] = random.nextLong();
+            if (partition.size(part) >= PARALLEL_PART_SIZE) {
+                largeParts.add(part);
+            }
+        }
+
+        final int[] assignments = new int[n];
+        boolean found = true;
+        int workers = largeParts.size() < 2 ? 0 : Math.min(mParallelism, largeParts.size());
+        final SearchCounters[] workerCounters = new SearchCounters[workers];
+        final boolean[] failed = new boolean[1];
+        // The first exception or error thrown by a worker, rethrown here rather than lost to the executor.
+        final Throwable[] thrown = new Throwable[1];
+        final AtomicInteger nextLarge = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(workers);
+        for (int w = 0; w < workers; w++) {
+            final SearchCounters taskCounters = workerCounters[w] = new SearchCounters();
+            mExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        boolean[] picked = new boolean[n];
+                        for (int i = nextLarge.getAndIncrement(); i < largeParts.size(); i = nextLarge.getAndIncrement()) {
+                            int part = largeParts.get(i);
+                            if (!drawPart(group, matching, partition, part, seeds[part], assignments, picked,
+                                    taskCounters)) {
+                                failed[0] = true;
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        // Parts taken but not drawn would otherwise leave the assignments incomplete.
+                        synchronized (thrown) {
+                            if (thrown[0] == null) {
+                                thrown[0] = ex;
+                            }
+                        }
+                        failed[0] = true;
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+
+        // Meanwhile draw the rest here.
+        boolean[] picked = new boolean[n];
+        for (int part = 0; part < partition.count(); part++) {
+            if (workers == 0 || partition.size(part) < PARALLEL_PART_SIZE) {
+                found &= drawPart(group, matching, partition, part, seeds[part], assignments, picked, counters);
+            }
+        }
+
+        try {
+            finished.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            probe.finish(counters, false);
+            throw new DrawFailureException("Interrupted while drawing.");
+        }
+        for (SearchCounters taskCounters : workerCounters) {
+            counters.add(taskCounters);
+        }
+        probe.searched();
+        if (!found || failed[0]) {
+            probe.finish(counters, false);
+            if (thrown[0] instanceof Error) {
+                throw (Error) thrown[0];
+            }
+            if (thrown[0] != null) {
+                throw new DrawFailureException("Drawing a part failed unexpectedly: " + thrown[0], thrown[0]);
+            }
+            throw new DrawFailureException();
+        }
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * Draws one part into the assignments, searching its givers (most restricted
+     * first) over its receivers (shuffled).
+     *
+     * @return true if the part was drawn, which it always can be.
+     */
+    private static boolean drawPart(CompiledGroup group, Matching matching, Partition partition, int part,
+                                    long seed, int[] assignments, boolean[] picked, SearchCounters counters) {
+        int size = partition.size(part);
+        if (size == 1) {
+            // Forced
+            int giver = partition.giver(part, 0);
+            assignments[giver] = matching.receiver(giver);
+            counters.node();
+            return true;
+        }
+        int[] givers = new int[size];
+        int[] receivers = new int[size];
+        for (int i = 0; i < size; i++) {
+            givers[i] = partition.giver(part, i);
+            receivers[i] = matching.receiver(givers[i]);
+        }
+        IndexedDrawEngine.shuffle(receivers, new FastRandom(seed));
+        return IndexedDrawEngine.search(group, givers, receivers, assignments, Long.MAX_VALUE, null, picked,
+                new int[size], counters) == IndexedDrawEngine.FOUND;
+    }
+}
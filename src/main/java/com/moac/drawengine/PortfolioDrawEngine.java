@@ -0,0 +1,232 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A DrawEngine that runs several copies of the {@link IndexedDrawEngine} search at
+ * once, each with its own shuffle and {@link RestartPolicy}, and returns the first
+ * draw found. The other searches are then asked to stop.
+ *
+ * A search's running time depends heavily on its shuffle, so racing a few
+ * differently shuffled (and restarted) searches avoids most unlucky long searches.
+ * One search never restarts, so an impossible draw is still detected.
+ */
+public class PortfolioDrawEngine implements DrawEngine {
+
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "portfolio-draw-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final List<RestartPolicy> mPolicies;
+    private final long mDeadlineNanos;
+    private final Executor mExecutor;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    /**
+     * A search for each available processor, with no deadline.
+     */
+    public PortfolioDrawEngine() {
+        this(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A search for each available processor.
+     *
+     * @param deadline The time allowed for a draw, or zero for no limit.
+     * @param unit     The unit of the deadline.
+     */
+    public PortfolioDrawEngine(long deadline, TimeUnit unit) {
+        this(defaultPolicies(Runtime.getRuntime().availableProcessors()), deadline, unit, DEFAULT_EXECUTOR,
+                RandomSource.unseeded());
+    }
+
+    /**
+     * @param policies The restart policy of each search; one search is run per policy.
+     *                 At least one must never restart if impossible draws are to fail
+     *                 before the deadline.
+     * @param deadline The time allowed for a draw, or zero for no limit.
+     * @param unit     The unit of the deadline.
+     * @param executor     Runs the searches. It must be able to run them all at once.
+     * @param randomSource Provides the seeds of each draw's searches. Each search can be
+     *                     replayed from its seed, but which search wins is down to timing.
+     */
+    public PortfolioDrawEngine(List<RestartPolicy> policies, long deadline, TimeUnit unit, Executor executor,
+                               RandomSource randomSource) {
+        if (policies == null || policies.isEmpty() || deadline < 0 || unit == null || executor == null
+                || randomSource == null) {
+            throw new IllegalArgumentException(
+                    "At least one search, a non-negative deadline, an executor and a random source are required.");
+        }
+        mPolicies = new ArrayList<RestartPolicy>(policies);
+        mDeadlineNanos = unit.toNanos(deadline);
+        mExecutor = executor;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none. The statistics
+     *                 are those of the search that completed the draw.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return A policy that never restarts, then a mix of Luby and geometric restarts.
+     */
+    static List<RestartPolicy> defaultPolicies(int searches) {
+        List<RestartPolicy> policies = new ArrayList<RestartPolicy>(searches);
+        policies.add(RestartPolicy.never());
+        for (int i = 1; i < searches; i++) {
+            switch (i % 3) {
+                case 1:
+                    policies.add(RestartPolicy.luby(32));
+                    break;
+                case 2:
+                    policies.add(RestartPolicy.geometric(100, 1.5));
+                    break;
+                default:
+                    policies.add(RestartPolicy.luby(256));
+            }
+        }
+        return policies;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom seeds = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), seeds.getSeed());
+        final CompiledGroup group = CompiledGroup.index(members);
+        probe.prepared();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<int[]> winner = new AtomicReference<int[]>();
+        final AtomicReference<SearchCounters> reported = new AtomicReference<SearchCounters>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger(mPolicies.size());
+
+        for (final RestartPolicy policy : mPolicies) {
+            final long seed = seeds.nextLong();
+            mExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        SearchCounters counters = new SearchCounters();
+                        int outcome = search(group, policy, new FastRandom(seed), stop, winner, counters);
+                        if (outcome != IndexedDrawEngine.ABORTED) {
+                            reported.compareAndSet(null, counters);
+                            stop.set(true);
+                            finished.countDown();
+                        }
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            finished.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            if (mDeadlineNanos == 0) {
+                finished.await();
+            } else if (!finished.await(mDeadlineNanos, TimeUnit.NANOSECONDS)) {
+                probe.finish(new SearchCounters(), false);
+                throw new DrawFailureException(String.format("No draw found within the deadline of %d ms.",
+                        TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos)));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            probe.finish(new SearchCounters(), false);
+            throw new DrawFailureException("Interrupted while drawing.");
+        } finally {
+            stop.set(true);
+        }
+
+        probe.searched();
+        SearchCounters counters = reported.get() == null ? new SearchCounters() : reported.get();
+        int[] assignments = winner.get();
+        if (assignments == null) {
+            probe.finish(counters, false);
+            throw new DrawFailureException();
+        }
+        int n = group.size();
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * Restarts the search with a fresh shuffle each time it runs out of budget.
+     *
+     * @return The outcome of the final attempt.
+     */
+    private static int search(CompiledGroup group, RestartPolicy policy, Random random,
+                              AtomicBoolean stop, AtomicReference<int[]> winner, SearchCounters counters) {
+        int n = group.size();
+        int[] givers = IndexedDrawEngine.sortByRestrictions(group);
+        IndexedDrawEngine.shuffleTies(group, givers, random);
+        int[] receivers = new int[n];
+        for (int i = 0; i < n; i++) {
+            receivers[i] = i;
+        }
+        int[] assignments = new int[n];
+
+        for (int attempt = 0; !stop.get(); attempt++) {
+            if (attempt > 0) {
+                counters.restart();
+            }
+            IndexedDrawEngine.shuffle(receivers, random);
+            int outcome = IndexedDrawEngine.search(group, givers, receivers, assignments,
+                    policy.budget(attempt), stop, counters);
+            if (outcome == IndexedDrawEngine.FOUND) {
+                return winner.compareAndSet(null, assignments) ? outcome : IndexedDrawEngine.ABORTED;
+            }
+            if (outcome == IndexedDrawEngine.EXHAUSTED) {
+                return outcome;
+            }
+        }
+        return IndexedDrawEngine.ABORTED;
+    }
+}
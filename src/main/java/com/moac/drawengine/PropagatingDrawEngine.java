@@ -0,0 +1,421 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A DrawEngine that searches with constraint propagation.
+ *
+ * The number of receivers left to each unassigned giver (its domain), and of
+ * givers left to each unassigned receiver, are kept up to date as pairs are
+ * made and undone, bucketed by count so the member with the fewest is found
+ * without scanning them all. Each step branches on whichever giver or receiver has the
+ * fewest options left (minimum remaining values), so a member with a single
+ * option is paired straight away. A step that leaves any member with no
+ * options is a dead end and is undone immediately (forward checking), rather
+ * than being discovered when the search reaches that member.
+ */
+public class PropagatingDrawEngine implements DrawEngine {
+
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public PropagatingDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public PropagatingDrawEngine(RandomSource randomSource) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+        Search search = new Search(group, random);
+        probe.prepared();
+
+        int[] assignments = new int[n];
+        SearchCounters counters = new SearchCounters();
+        boolean found = search.run(assignments, counters);
+        probe.searched();
+        if (!found) {
+            probe.finish(counters, false);
+            throw new DrawFailureException();
+        }
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * The state of one draw's search.
+     */
+    static final class Search {
+
+        private final CompiledGroup mGroup;
+
+        // Unassigned givers and receivers, in random order.
+        private final SparseSet mGivers;
+        private final SparseSet mReceivers;
+
+        // Unassigned givers by the unassigned receivers they exclude, themselves
+        // included, and unassigned receivers by the unassigned givers excluding them;
+        // plus one, as bucket zero holds assigned members. Options are the unassigned
+        // count less these, so the most excluded member has the fewest options.
+        private final Buckets mGiverExclusions;
+        private final Buckets mReceiverExclusions;
+
+        // The search stack: the pair made at each depth, the positions they were
+        // removed from and their exclusions then, the member branched on and the
+        // next option to try.
+        private final int[] mPairGivers;
+        private final int[] mPairReceivers;
+        private final int[] mGiverPositions;
+        private final int[] mReceiverPositions;
+        private final int[] mGiverExcluded;
+        private final int[] mReceiverExcluded;
+        private final int[] mBranches;
+        private final int[] mCursors;
+
+        Search(CompiledGroup group, Random random) {
+            int n = group.size();
+            mGroup = group;
+
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            int[] exclusions = new int[n];
+            IndexedDrawEngine.shuffle(order, random);
+            mGivers = new SparseSet(order);
+            for (int i = 0; i < n; i++) {
+                exclusions[i] = group.restrictionCount(i) + 2;
+            }
+            mGiverExclusions = new Buckets(order, exclusions);
+            IndexedDrawEngine.shuffle(order, random);
+            mReceivers = new SparseSet(order);
+            for (int i = 0; i < n; i++) {
+                exclusions[i] = group.restrictorCount(i) + 2;
+            }
+            mReceiverExclusions = new Buckets(order, exclusions);
+
+            mPairGivers = new int[n];
+            mPairReceivers = new int[n];
+            mGiverPositions = new int[n];
+            mReceiverPositions = new int[n];
+            mGiverExcluded = new int[n];
+            mReceiverExcluded = new int[n];
+            mBranches = new int[n];
+            mCursors = new int[n];
+        }
+
+        /**
+         * @param assignments Populated with the receiver index for each giver index.
+         * @param counters    Counts the work done.
+         * @return true if all givers were assigned.
+         */
+        boolean run(int[] assignments, SearchCounters counters) {
+            int n = mGroup.size();
+            int depth = 0;
+            boolean descending = true;
+            while (true) {
+                if (descending) {
+                    if (depth == n) {
+                        for (int i = 0; i < n; i++) {
+                            assignments[mPairGivers[i]] = mPairReceivers[i];
+                        }
+                        return true;
+                    }
+                    mBranches[depth] = selectBranch();
+                    mCursors[depth] = 0;
+                }
+
+                int branch = mBranches[depth];
+                boolean paired = branch != NO_OPTIONS && (branch >= 0
+                        ? pairGiver(depth, branch)
+                        : pairReceiver(depth, ~branch));
+
+                if (paired) {
+                    counters.node();
+                    depth++;
+                    descending = true;
+                } else {
+                    // Undo the previous pair and try its next option.
+                    if (--depth < 0) {
+                        return false;
+                    }
+                    unpair(depth);
+                    counters.backtrack();
+                    descending = false;
+                }
+            }
+        }
+
+        private static final int NO_OPTIONS = Integer.MIN_VALUE;
+
+        /**
+         * @return The unassigned giver, or the complement (~) of the unassigned receiver,
+         * with the fewest options; or {@link #NO_OPTIONS} if any member has none left.
+         * Givers are preferred on ties.
+         */
+        private int selectBranch() {
+            // As many receivers as givers are unassigned.
+            int unassigned = mGivers.size();
+            int giverExcluded = mGiverExclusions.max();
+            int receiverExcluded = mReceiverExclusions.max();
+            if (Math.max(giverExcluded, receiverExcluded) - 1 >= unassigned) {
+                return NO_OPTIONS;
+            }
+            return giverExcluded >= receiverExcluded
+                    ? mGiverExclusions.first(giverExcluded)
+                    : ~mReceiverExclusions.first(receiverExcluded);
+        }
+
+        /**
+         * Pairs the giver with its next allowed receiver, from the depth's cursor.
+         *
+         * @return false if there are no receivers left to try.
+         */
+        private boolean pairGiver(int depth, int giver) {
+            for (int i = mCursors[depth]; i < mReceivers.size(); i++) {
+                int receiver = mReceivers.get(i);
+                if (!mGroup.isExcluded(giver, receiver)) {
+                    mCursors[depth] = i + 1;
+                    pair(depth, giver, receiver);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Pairs the receiver with its next allowed giver, from the depth's cursor.
+         *
+         * @return false if there are no givers left to try.
+         */
+        private boolean pairReceiver(int depth, int receiver) {
+            for (int i = mCursors[depth]; i < mGivers.size(); i++) {
+                int giver = mGivers.get(i);
+                if (!mGroup.isExcluded(giver, receiver)) {
+                    mCursors[depth] = i + 1;
+                    pair(depth, giver, receiver);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void pair(int depth, int giver, int receiver) {
+            mPairGivers[depth] = giver;
+            mPairReceivers[depth] = receiver;
+            mGiverPositions[depth] = mGivers.remove(giver);
+            mReceiverPositions[depth] = mReceivers.remove(receiver);
+            mGiverExcluded[depth] = mGiverExclusions.remove(giver);
+            mReceiverExcluded[depth] = mReceiverExclusions.remove(receiver);
+
+            // Unassigned members no longer count the pair among their exclusions.
+            for (int i = mGroup.restrictionCount(giver) - 1; i >= 0; i--) {
+                int restricted = mGroup.restriction(giver, i);
+                if (mReceivers.contains(restricted)) {
+                    mReceiverExclusions.decrement(restricted);
+                }
+            }
+            if (mReceivers.contains(giver)) {
+                mReceiverExclusions.decrement(giver);
+            }
+            for (int i = mGroup.restrictorCount(receiver) - 1; i >= 0; i--) {
+                int restrictor = mGroup.restrictor(receiver, i);
+                if (mGivers.contains(restrictor)) {
+                    mGiverExclusions.decrement(restrictor);
+                }
+            }
+            if (mGivers.contains(receiver)) {
+                mGiverExclusions.decrement(receiver);
+            }
+        }
+
+        private void unpair(int depth) {
+            int giver = mPairGivers[depth];
+            int receiver = mPairReceivers[depth];
+            if (mGivers.contains(receiver)) {
+                mGiverExclusions.increment(receiver);
+            }
+            for (int i = mGroup.restrictorCount(receiver) - 1; i >= 0; i--) {
+                int restrictor = mGroup.restrictor(receiver, i);
+                if (mGivers.contains(restrictor)) {
+                    mGiverExclusions.increment(restrictor);
+                }
+            }
+            if (mReceivers.contains(giver)) {
+                mReceiverExclusions.increment(giver);
+            }
+            for (int i = mGroup.restrictionCount(giver) - 1; i >= 0; i--) {
+                int restricted = mGroup.restriction(giver, i);
+                if (mReceivers.contains(restricted)) {
+                    mReceiverExclusions.increment(restricted);
+                }
+            }
+            mReceiverExclusions.restore(receiver, mReceiverExcluded[depth]);
+            mGiverExclusions.restore(giver, mGiverExcluded[depth]);
+            mReceivers.restore(receiver, mReceiverPositions[depth]);
+            mGivers.restore(giver, mGiverPositions[depth]);
+        }
+    }
+
+    /**
+     * The members 0..n-1, each with a count, in an array sorted by count. Changing a
+     * count by one swaps the member to the edge of its bucket, so is O(1), and finding
+     * the highest count scans down from the last highest past any emptied buckets.
+     * Removed members are kept in bucket zero, so counts of members should be positive.
+     */
+    static final class Buckets {
+
+        private final int[] mSorted;
+        private final int[] mPositions;
+        private final int[] mCounts;
+        // The position in mSorted of the first member with each count.
+        private final int[] mStarts;
+        // No member has a higher count.
+        private int mMax;
+
+        /**
+         * @param order  The members, the order to keep within each bucket to start with.
+         * @param counts The count of each member, at least one. No count can later be
+         *               raised above the highest of these.
+         */
+        Buckets(int[] order, int[] counts) {
+            int n = order.length;
+            mSorted = new int[n];
+            mPositions = new int[n];
+            mCounts = Arrays.copyOf(counts, n);
+            for (int i = 0; i < n; i++) {
+                mMax = Math.max(mMax, counts[i]);
+            }
+            mStarts = new int[mMax + 2];
+            for (int i = 0; i < n; i++) {
+                mStarts[counts[i] + 1]++;
+            }
+            for (int count = 0; count <= mMax; count++) {
+                mStarts[count + 1] += mStarts[count];
+            }
+            int[] fill = Arrays.copyOf(mStarts, mMax + 1);
+            for (int member : order) {
+                int position = fill[counts[member]]++;
+                mSorted[position] = member;
+                mPositions[member] = position;
+            }
+        }
+
+        /**
+         * @return The highest count of any member, or zero if all are removed.
+         */
+        int max() {
+            while (mMax > 0 && mStarts[mMax] == mStarts[mMax + 1]) {
+                mMax--;
+            }
+            return mMax;
+        }
+
+        /**
+         * @return The first member with the count.
+         */
+        int first(int count) {
+            return mSorted[mStarts[count]];
+        }
+
+        void increment(int member) {
+            int count = mCounts[member];
+            // Swap with the last of the bucket, which then becomes the first of the next.
+            swap(member, mSorted[mStarts[count + 1] - 1]);
+            mStarts[count + 1]--;
+            mCounts[member] = count + 1;
+            mMax = Math.max(mMax, count + 1);
+        }
+
+        void decrement(int member) {
+            int count = mCounts[member];
+            // Swap with the first of the bucket, which then becomes the last of the previous.
+            swap(member, mSorted[mStarts[count]]);
+            mStarts[count]++;
+            mCounts[member] = count - 1;
+        }
+
+        /**
+         * @return The member's count, to {@link #restore(int, int)} it with.
+         */
+        int remove(int member) {
+            int count = mCounts[member];
+            while (mCounts[member] > 0) {
+                decrement(member);
+            }
+            return count;
+        }
+
+        void restore(int member, int count) {
+            while (mCounts[member] < count) {
+                increment(member);
+            }
+        }
+
+        private void swap(int a, int b) {
+            int positionA = mPositions[a];
+            int positionB = mPositions[b];
+            mSorted[positionA] = b;
+            mPositions[b] = positionA;
+            mSorted[positionB] = a;
+            mPositions[a] = positionB;
+        }
+    }
+}
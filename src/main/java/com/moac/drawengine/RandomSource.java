@@ -0,0 +1,90 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the randomness for each draw made by a DrawEngine.
+ *
+ * Every draw is made from its own fast, unsynchronised generator, started from a
+ * seed provided here. A draw from the same seed and the same members gives the
+ * same result, so a draw can be replayed.
+ *
+ * Extend it to provide seeds some other way, such as recording each seed to an
+ * audit log, so that any draw can be replayed with {@link #seeded(long)}.
+ */
+public abstract class RandomSource {
+
+    private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(System.nanoTime());
+
+    /**
+     * Called once per draw, from any thread drawing, so must be thread safe.
+     *
+     * @return The seed for the next draw.
+     */
+    public abstract long nextSeed();
+
+    /**
+     * @return The generator for the next draw.
+     */
+    FastRandom nextRandom() {
+        return new FastRandom(nextSeed());
+    }
+
+    /**
+     * @return A source giving each draw a different, unpredictable seed.
+     */
+    public static RandomSource unseeded() {
+        return new RandomSource() {
+            @Override
+            public long nextSeed() {
+                return FastRandom.splitMix64(SEED_UNIQUIFIER.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
+            }
+        };
+    }
+
+    /**
+     * @param seed The seed for every draw.
+     * @return A source giving each draw the same seed, so that the same members
+     * always give the same draw.
+     */
+    public static RandomSource seeded(final long seed) {
+        return new RandomSource() {
+            @Override
+            public long nextSeed() {
+                return seed;
+            }
+        };
+    }
+
+    /**
+     * @param seed The seed of the sequence.
+     * @return A source giving each draw the next seed of a sequence, so that
+     * successive draws differ but the same sequence of draws can be replayed.
+     */
+    public static RandomSource sequence(long seed) {
+        final Random seeds = new FastRandom(seed);
+        return new RandomSource() {
+            @Override
+            public synchronized long nextSeed() {
+                return seeds.nextLong();
+            }
+        };
+    }
+}
@@ -23,6 +23,30 @@ import java.util.*;
  */
 public class RecursiveDrawEngine implements DrawEngine {
 
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public RecursiveDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public RecursiveDrawEngine(RandomSource randomSource) {
+        if (randomSource == null) {
+            throw new IllegalArgumentException("Random source is required.");
+        }
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -38,11 +62,23 @@ public class RecursiveDrawEngine implements DrawEngine {
             throw new DrawFailureException("Can't have less than two members.");
         }
 
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+
         // Shuffle a list of members to randomize the result
         List<Long> randomMembers = new ArrayList<Long>(members.keySet());
-        Collections.shuffle(randomMembers, new Random());
+        Collections.shuffle(randomMembers, random);
+        probe.prepared();
 
-        Map<Long, Long> draw = generateDrawImpl(members, randomMembers);
+        SearchCounters counters = new SearchCounters();
+        DrawCancellation cancellation = DrawCancellation.current();
+        Map<Long, Long> draw = generateDrawImpl(members, randomMembers, counters, cancellation);
+        probe.searched();
+        if (draw == null && cancellation != null && cancellation.isStopped()) {
+            probe.finish(counters, false);
+            throw cancellation.failure(this, members.size(), random.getSeed(), counters);
+        }
+        probe.finish(counters, draw != null);
         if (draw != null) {
             return draw;
         } else {
@@ -50,12 +86,17 @@ public class RecursiveDrawEngine implements DrawEngine {
         }
     }
 
-    private Map<Long, Long> generateDrawImpl(final Map<Long, Set<Long>> members, List<Long> otherMembers)
+    private Map<Long, Long> generateDrawImpl(final Map<Long, Set<Long>> members, List<Long> otherMembers,
+                                             SearchCounters counters, DrawCancellation cancellation)
             throws DrawFailureException {
         if (members.isEmpty() && otherMembers.isEmpty())
             return new HashMap<Long, Long>();
 
         for (Long self : members.keySet()) {
+            // Unwind without a result if the draw was cancelled or ran past its deadline.
+            if (cancellation != null && cancellation.poll()) {
+                return null;
+            }
             Long pick = pick(self, members.get(self), otherMembers);
             if (pick != null) {
                 // Add the pair to the result
@@ -69,11 +110,14 @@ public class RecursiveDrawEngine implements DrawEngine {
                 otherMembersSublist.remove(pick);
 
                 // Recursively draw the remaining members
-                Map<Long, Long> progressResult = generateDrawImpl(membersSublist, otherMembersSublist);
+                counters.node();
+                Map<Long, Long> progressResult = generateDrawImpl(membersSublist, otherMembersSublist, counters,
+                        cancellation);
                 if (progressResult != null) {
                     result.putAll(progressResult);
                     return result;
                 }
+                counters.backtrack();
             }
         }
 
@@ -0,0 +1,110 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Decides how many backtracks each attempt of a restarting search is allowed
+ * before it gives up and starts again with a fresh shuffle.
+ *
+ * Budgets that grow without bound keep a restarting search complete: eventually
+ * an attempt is allowed enough backtracks to search exhaustively.
+ */
+public abstract class RestartPolicy {
+
+    /**
+     * @param attempt The attempt, starting from zero.
+     * @return The number of backtracks allowed for the attempt.
+     */
+    public abstract long budget(int attempt);
+
+    /**
+     * @return A policy that never restarts.
+     */
+    public static RestartPolicy never() {
+        return new RestartPolicy() {
+            @Override
+            public long budget(int attempt) {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public String toString() {
+                return "never";
+            }
+        };
+    }
+
+    /**
+     * @param unit The number of backtracks per step of the Luby sequence (1, 1, 2, 1, 1, 2, 4, ...).
+     * @return A policy with budgets following the Luby sequence.
+     */
+    public static RestartPolicy luby(final long unit) {
+        if (unit < 1) {
+            throw new IllegalArgumentException("Unit must be at least one backtrack: " + unit);
+        }
+        return new RestartPolicy() {
+            @Override
+            public long budget(int attempt) {
+                long luby = lubyTerm(attempt + 1L);
+                return luby > Long.MAX_VALUE / unit ? Long.MAX_VALUE : luby * unit;
+            }
+
+            @Override
+            public String toString() {
+                return "luby(" + unit + ")";
+            }
+        };
+    }
+
+    /**
+     * @param initial The number of backtracks for the first attempt.
+     * @param factor  The growth of the budget for each subsequent attempt.
+     * @return A policy with geometrically growing budgets.
+     */
+    public static RestartPolicy geometric(final long initial, final double factor) {
+        if (initial < 1 || !(factor > 1)) {
+            throw new IllegalArgumentException("Budgets must start from at least one backtrack and grow: "
+                    + initial + ", " + factor);
+        }
+        return new RestartPolicy() {
+            @Override
+            public long budget(int attempt) {
+                double budget = initial * Math.pow(factor, attempt);
+                return budget >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) budget;
+            }
+
+            @Override
+            public String toString() {
+                return "geometric(" + initial + ", " + factor + ")";
+            }
+        };
+    }
+
+    /**
+     * @return The i'th (from one) term of the Luby sequence.
+     */
+    static long lubyTerm(long i) {
+        while (true) {
+            // Find the k where 2^(k-1) <= i < 2^k
+            int k = 64 - Long.numberOfLeadingZeros(i);
+            if (i == (1L << k) - 1) {
+                return 1L << (k - 1);
+            }
+            i -= (1L << (k - 1)) - 1;
+        }
+    }
+}
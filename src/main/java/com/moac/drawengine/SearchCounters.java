@@ -0,0 +1,80 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Counts the work done by a search. Engines count into one of these for every
+ * draw; they are only read if a {@link DrawListener} is attached.
+ */
+final class SearchCounters {
+
+    // Assignments made.
+    long mNodes;
+    // Assignments undone.
+    long mBacktracks;
+    // The most assignments undone in a row.
+    int mDeepestRollback;
+    // The largest set of failed paths (receivers ruled out) held for one giver.
+    int mMaxFailedPaths;
+    // The number of times the search started again.
+    int mRestarts;
+
+    private int mRollback;
+
+    void node() {
+        mNodes++;
+        mRollback = 0;
+    }
+
+    void backtrack() {
+        mBacktracks++;
+        if (++mRollback > mDeepestRollback) {
+            mDeepestRollback = mRollback;
+        }
+    }
+
+    void failedPaths(int size) {
+        if (size > mMaxFailedPaths) {
+            mMaxFailedPaths = size;
+        }
+    }
+
+    /**
+     * Adds the work counted by another search, such as of another part of the same draw.
+     */
+    void add(SearchCounters other) {
+        mNodes += other.mNodes;
+        mBacktracks += other.mBacktracks;
+        mDeepestRollback = Math.max(mDeepestRollback, other.mDeepestRollback);
+        mMaxFailedPaths = Math.max(mMaxFailedPaths, other.mMaxFailedPaths);
+        mRestarts += other.mRestarts;
+    }
+
+    void reset() {
+        mNodes = 0;
+        mBacktracks = 0;
+        mDeepestRollback = 0;
+        mMaxFailedPaths = 0;
+        mRestarts = 0;
+        mRollback = 0;
+    }
+
+    void restart() {
+        mRestarts++;
+        mRollback = 0;
+    }
+}
@@ -0,0 +1,143 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * The aggregate statistics of many simulated draws of one group, from a {@link DrawSimulator}.
+ */
+public final class SimulationReport {
+
+    private final long[] mIds;
+    private final long mDraws;
+    private final long mFailures;
+    private final long mElapsedNanos;
+    private final LogHistogram mLatencyNanos;
+    private final LogHistogram mBacktrackCounts;
+    private final long[] mPairCounts;
+
+    SimulationReport(long[] ids, long draws, long failures, long elapsedNanos, LogHistogram latencyNanos,
+                     LogHistogram backtrackCounts, long[] pairCounts) {
+        mIds = ids;
+        mDraws = draws;
+        mFailures = failures;
+        mElapsedNanos = elapsedNanos;
+        mLatencyNanos = latencyNanos;
+        mBacktrackCounts = backtrackCounts;
+        mPairCounts = pairCounts;
+    }
+
+    /**
+     * @return The number of draws simulated.
+     */
+    public long getDraws() {
+        return mDraws;
+    }
+
+    /**
+     * @return The number of draws that failed.
+     */
+    public long getFailures() {
+        return mFailures;
+    }
+
+    /**
+     * @return The fraction of draws that succeeded, from 0 to 1.
+     */
+    public double getSuccessRate() {
+        return mDraws == 0 ? 0 : (double) (mDraws - mFailures) / mDraws;
+    }
+
+    /**
+     * @return The wall clock time of the whole simulation.
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * @return The number of draws simulated per second of wall clock time.
+     */
+    public double getDrawsPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mDraws * 1e9 / mElapsedNanos;
+    }
+
+    /**
+     * @return The distribution of draw times, in nanoseconds, for percentiles.
+     */
+    public LogHistogram getLatencyNanos() {
+        return mLatencyNanos;
+    }
+
+    /**
+     * @return The distribution of backtracks per draw.
+     */
+    public LogHistogram getBacktrackCounts() {
+        return mBacktrackCounts;
+    }
+
+    /**
+     * @return true if pairs were counted, which they are for groups of up to
+     * {@value DrawSimulator#MAX_PAIR_MATRIX_SIZE} members.
+     */
+    public boolean hasPairCounts() {
+        return mPairCounts != null;
+    }
+
+    /**
+     * @return The number of successful draws in which the giver was assigned the receiver.
+     * @throws IllegalArgumentException If either is not a member.
+     * @throws IllegalStateException    If pairs were not counted.
+     */
+    public long getPairCount(long giver, long receiver) {
+        if (mPairCounts == null) {
+            throw new IllegalStateException("Pairs are only counted for groups of up to "
+                    + DrawSimulator.MAX_PAIR_MATRIX_SIZE + " members.");
+        }
+        int from = indexOf(giver);
+        int to = indexOf(receiver);
+        return mPairCounts[from * mIds.length + to];
+    }
+
+    /**
+     * @return The fraction of successful draws in which the giver was assigned the receiver.
+     * @see #getPairCount(long, long)
+     */
+    public double getPairFrequency(long giver, long receiver) {
+        long successes = mDraws - mFailures;
+        return successes == 0 ? 0 : (double) getPairCount(giver, receiver) / successes;
+    }
+
+    private int indexOf(long id) {
+        int index = Arrays.binarySearch(mIds, id);
+        if (index < 0) {
+            throw new IllegalArgumentException(id + " is not a member.");
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d draws, %.4f success rate, %.0f draws/s, latency p50 %d ns, p99 %d ns, "
+                        + "p99.9 %d ns, backtracks p50 %d, p99 %d, max %d",
+                mDraws, getSuccessRate(), getDrawsPerSecond(), mLatencyNanos.getPercentile(50),
+                mLatencyNanos.getPercentile(99), mLatencyNanos.getPercentile(99.9),
+                mBacktrackCounts.getPercentile(50), mBacktrackCounts.getPercentile(99),
+                mBacktrackCounts.getPercentile(100));
+    }
+}
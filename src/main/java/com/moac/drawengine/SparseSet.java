@@ -0,0 +1,95 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A set of the indices 0..n-1 with O(1) membership, removal and iteration over
+ * its members in a dense array.
+ *
+ * Removing a member swaps it to the end of the dense array. Restoring members
+ * in the reverse order of their removal, with the position each was removed
+ * from, puts the dense array back exactly as it was. A search can therefore
+ * walk the dense array at one depth while deeper depths remove and restore.
+ */
+final class SparseSet {
+
+    private final int[] mDense;
+    private final int[] mPositions;
+    private int mSize;
+
+    /**
+     * @param order The initial members, in iteration order.
+     */
+    SparseSet(int[] order) {
+        mDense = new int[order.length];
+        mPositions = new int[order.length];
+        reset(order);
+    }
+
+    /**
+     * Makes every index a member again.
+     *
+     * @param order The members, in iteration order.
+     */
+    void reset(int[] order) {
+        System.arraycopy(order, 0, mDense, 0, order.length);
+        for (int i = 0; i < order.length; i++) {
+            mPositions[order[i]] = i;
+        }
+        mSize = order.length;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The member at the given position, below {@link #size()}.
+     */
+    int get(int position) {
+        return mDense[position];
+    }
+
+    boolean contains(int index) {
+        return mPositions[index] < mSize;
+    }
+
+    /**
+     * @return The position the index was removed from, needed to restore it.
+     */
+    int remove(int index) {
+        int position = mPositions[index];
+        int last = mDense[--mSize];
+        mDense[position] = last;
+        mPositions[last] = position;
+        mDense[mSize] = index;
+        mPositions[index] = mSize;
+        return position;
+    }
+
+    /**
+     * Restores the most recently removed index to the position it was removed from.
+     */
+    void restore(int index, int position) {
+        int moved = mDense[position];
+        mDense[position] = index;
+        mPositions[index] = position;
+        mDense[mSize] = moved;
+        mPositions[moved] = mSize;
+        mSize++;
+    }
+}
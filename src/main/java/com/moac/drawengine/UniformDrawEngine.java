@@ -0,0 +1,162 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A DrawEngine whose draws are close to uniform over all the possible draws.
+ *
+ * The searching engines take the first allowed receiver in a shuffled order, so
+ * some draws are much more likely than others. Here a random matching is only the
+ * starting point of a Markov chain: each step picks two givers and swaps their
+ * receivers, or three givers and rotates their receivers, when every giver may
+ * give to their new receiver. The moves are their own reverse with the same
+ * probability, so the chain's stationary distribution is uniform, and the longer
+ * it runs (its mixing time) the closer the draw is to uniform.
+ *
+ * The number of steps is the mixing factor times n ln(n). For an unrestricted
+ * group swaps alone mix after about n ln(n) / 2 steps; restrictions slow the
+ * mixing and, in rare structures, may leave some draws unreachable by swaps and
+ * rotations.
+ */
+public class UniformDrawEngine implements DrawEngine {
+
+    static final double DEFAULT_MIXING_FACTOR = 2.0;
+
+    private final double mMixingFactor;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    public UniformDrawEngine() {
+        this(RandomSource.unseeded());
+    }
+
+    /**
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public UniformDrawEngine(RandomSource randomSource) {
+        this(DEFAULT_MIXING_FACTOR, randomSource);
+    }
+
+    /**
+     * @param mixingFactor The steps of the chain per n ln(n), at least n steps are always taken.
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public UniformDrawEngine(double mixingFactor, RandomSource randomSource) {
+        if (!(mixingFactor >= 0) || randomSource == null) {
+            throw new IllegalArgumentException("A non-negative mixing factor and a random source are required.");
+        }
+        mMixingFactor = mixingFactor;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none. Accepted
+     *                 steps of the chain are counted as nodes.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+
+        SearchCounters counters = new SearchCounters();
+        Matching matching = Matching.random(group, random, counters);
+        if (!matching.isPerfect()) {
+            probe.finish(counters, false);
+            throw new DrawFailureException(matching.describeBlockingSet());
+        }
+        probe.prepared();
+
+        int[] assignments = matching.assignments();
+        mix(group, assignments, mixingSteps(n, mMixingFactor), random, counters);
+        probe.searched();
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * @return The steps taken for a group of n members.
+     */
+    static long mixingSteps(int n, double mixingFactor) {
+        return Math.max(n, (long) Math.ceil(mixingFactor * n * Math.log(n)));
+    }
+
+    /**
+     * Runs the chain from a valid draw.
+     *
+     * @param assignments The receiver index for each giver index; updated in place.
+     */
+    static void mix(CompiledGroup group, int[] assignments, long steps, Random random, SearchCounters counters) {
+        int n = assignments.length;
+        for (long step = 0; step < steps; step++) {
+            int a = random.nextInt(n);
+            int b = random.nextInt(n);
+            if (a == b) {
+                continue;
+            }
+            int ra = assignments[a];
+            int rb = assignments[b];
+            if (n > 2 && random.nextBoolean()) {
+                // Rotate: a gets b's, b gets c's and c gets a's.
+                int c = random.nextInt(n);
+                if (c == a || c == b) {
+                    continue;
+                }
+                int rc = assignments[c];
+                if (!group.isExcluded(a, rb) && !group.isExcluded(b, rc) && !group.isExcluded(c, ra)) {
+                    assignments[a] = rb;
+                    assignments[b] = rc;
+                    assignments[c] = ra;
+                    counters.node();
+                }
+            } else if (!group.isExcluded(a, rb) && !group.isExcluded(b, ra)) {
+                // Swap
+                assignments[a] = rb;
+                assignments[b] = ra;
+                counters.node();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.moac.drawengine;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A DrawEngine that treats {@link PairingPenalties} as soft restrictions, such as
+ * pairs from previous years: it returns a draw with the least total penalty,
+ * avoiding penalised pairs wherever the restrictions allow.
+ *
+ * The draw is a minimum cost bipartite perfect matching, found in two phases:
+ *
+ *   1. A random matching that treats penalised pairs as restrictions. When the
+ *      history leaves enough room, as it usually does in all but small groups,
+ *      this is a draw with no penalty, found in O(n + restrictions + penalties).
+ *   2. Otherwise each member left over is added by the Hungarian algorithm: a
+ *      shortest augmenting path (Dijkstra, with dual potentials to keep edge costs
+ *      non-negative) from the matching so far. Each path costs O(n) per member it
+ *      passes through, and ties prefer members without a giver, so paths through
+ *      a small over-restricted family in a large group stay short.
+ *
+ * Restrictions stay hard: a group that can't be drawn at all fails as usual.
+ */
+public class WeightedDrawEngine implements DrawEngine {
+
+    private static final long INFINITY = Long.MAX_VALUE / 4;
+
+    private final PairingPenalties mPenalties;
+    private final RandomSource mRandomSource;
+    private volatile DrawListener mListener;
+
+    /**
+     * No penalties; equivalent to an unbiased {@link MatchingDrawEngine}.
+     */
+    public WeightedDrawEngine() {
+        this(new PairingPenalties());
+    }
+
+    /**
+     * @param penalties The penalties used by {@link #generateDraw(Map)}.
+     */
+    public WeightedDrawEngine(PairingPenalties penalties) {
+        this(penalties, RandomSource.unseeded());
+    }
+
+    /**
+     * @param penalties    The penalties used by {@link #generateDraw(Map)}.
+     * @param randomSource Provides the randomness for each draw.
+     */
+    public WeightedDrawEngine(PairingPenalties penalties, RandomSource randomSource) {
+        if (penalties == null || randomSource == null) {
+            throw new IllegalArgumentException("Penalties and random source are required.");
+        }
+        mPenalties = penalties;
+        mRandomSource = randomSource;
+    }
+
+    /**
+     * @param listener Receives the statistics of each draw, or null for none.
+     */
+    public void setDrawListener(DrawListener listener) {
+        mListener = listener;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * com.moac.drawengine.DrawEngine#generateDraw(java.
+     * test.Map)
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members)
+            throws DrawFailureException {
+        return generateDraw(members, mPenalties);
+    }
+
+    /**
+     * @param members   A mapping between the members in the draw and their associated restrictions.
+     * @param penalties The penalties for this draw, instead of the engine's.
+     * @return A draw with the least total penalty.
+     * @throws DrawFailureException If the restrictions can't be met.
+     */
+    public Map<Long, Long> generateDraw(final Map<Long, Set<Long>> members, PairingPenalties penalties)
+            throws DrawFailureException {
+
+        // Can't draw null, zero or single length members sets
+        if (members == null || members.size() < 2) {
+            throw new DrawFailureException("Can't have less than two members.");
+        }
+        if (penalties == null) {
+            throw new IllegalArgumentException("Penalties are required.");
+        }
+
+        FastRandom random = mRandomSource.nextRandom();
+        DrawProbe probe = DrawProbe.start(mListener, this, members.size(), random.getSeed());
+        CompiledGroup group = CompiledGroup.index(members);
+        int n = group.size();
+        int[] penaltyOffsets = new int[n + 1];
+        long[] penaltyRows = indexPenalties(group, penalties, penaltyOffsets);
+        probe.prepared();
+
+        // Phase 1: a matching that avoids every penalised pair.
+        SearchCounters counters = new SearchCounters();
+        CompiledGroup free = withoutPenalised(group, penaltyOffsets, penaltyRows);
+        Matching matching = Matching.maximum(free, random, counters);
+        int[] assignments = matching.assignments();
+
+        // Phase 2: add whoever is left over at the least extra penalty.
+        if (!matching.isPerfect()) {
+            int[] owners = Arrays.copyOf(matching.owners(), n + 1);
+            if (!complete(group, penaltyOffsets, penaltyRows, owners, counters)) {
+                probe.finish(counters, false);
+                throw new DrawFailureException(Feasibility.check(group).toString());
+            }
+            for (int receiver = 0; receiver < n; receiver++) {
+                assignments[owners[receiver]] = receiver;
+            }
+        }
+        probe.searched();
+
+        Map<Long, Long> result = new HashMap<Long, Long>(n * 4 / 3 + 1);
+        for (int giver = 0; giver < n; giver++) {
+            result.put(group.id(giver), group.id(assignments[giver]));
+        }
+        probe.finish(counters, true);
+        return result;
+    }
+
+    /**
+     * @param offsets Filled with the start of each giver's penalties, plus the end.
+     * @return Each giver's penalised receivers in ascending index order, each packed
+     * as receiver index << 32 | penalty. Self pairs and non-members are dropped.
+     */
+    private static long[] indexPenalties(CompiledGroup group, PairingPenalties penalties, int[] offsets) {
+        int n = group.size();
+        long[] packed = new long[16];
+        int count = 0;
+        for (int giver = 0; giver < n; giver++) {
+            offsets[giver] = count;
+            Map<Long, Integer> row = penalties.row(group.id(giver));
+            if (row != null) {
+                for (Map.Entry<Long, Integer> entry : row.entrySet()) {
+                    int receiver = group.indexOf(entry.getKey());
+                    if (receiver >= 0 && receiver != giver && entry.getValue() > 0) {
+                        if (count == packed.length) {
+                            packed = Arrays.copyOf(packed, count * 2);
+                        }
+                        packed[count++] = (long) receiver << 32 | entry.getValue();
+                    }
+                }
+            }
+            Arrays.sort(packed, offsets[giver], count);
+        }
+        offsets[n] = count;
+        return Arrays.copyOf(packed, count);
+    }
+
+    /**
+     * @return The group with each penalised pair added to its restrictions.
+     */
+    private static CompiledGroup withoutPenalised(CompiledGroup group, int[] penaltyOffsets, long[] penaltyRows) {
+        int n = group.size();
+        int[] offsets = new int[n + 1];
+        int[] restrictions = new int[penaltyOffsets[n] + restrictionTotal(group)];
+        int count = 0;
+        for (int giver = 0; giver < n; giver++) {
+            offsets[giver] = count;
+            // Merge the two sorted rows.
+            int i = 0;
+            int j = penaltyOffsets[giver];
+            int restricted = group.restrictionCount(giver);
+            while (i < restricted || j < penaltyOffsets[giver + 1]) {
+                int next;
+                if (j == penaltyOffsets[giver + 1]
+                        || (i < restricted && group.restriction(giver, i) <= (int) (penaltyRows[j] >>> 32))) {
+                    next = group.restriction(giver, i++);
+                } else {
+                    next = (int) (penaltyRows[j++] >>> 32);
+                }
+                if (count == offsets[giver] || restrictions[count - 1] != next) {
+                    restrictions[count++] = next;
+                }
+            }
+        }
+        offsets[n] = count;
+        return CompiledGroup.index(group.ids(), offsets, Arrays.copyOf(restrictions, count));
+    }
+
+    private static int restrictionTotal(CompiledGroup group) {
+        int total = 0;
+        for (int giver = 0; giver < group.size(); giver++) {
+            total += group.restrictionCount(giver);
+        }
+        return total;
+    }
+
+    /**
+     * Gives every unassigned receiver a giver by the Hungarian algorithm, each time along
+     * a cheapest augmenting path. The matching so far only uses pairs without a penalty,
+     * so zero potentials are a valid start.
+     *
+     * @param owners The giver of each receiver, or -1, with one spare slot at the end.
+     * @return false if the restrictions can't be met.
+     */
+    private static boolean complete(CompiledGroup group, int[] penaltyOffsets, long[] penaltyRows, int[] owners,
+                                    SearchCounters counters) {
+        int n = group.size();
+        long[] giverPotentials = new long[n];
+        long[] receiverPotentials = new long[n + 1];
+        long[] distances = new long[n + 1];
+        int[] previous = new int[n + 1];
+        boolean[] reached = new boolean[n + 1];
+        boolean[] assigned = new boolean[n];
+        for (int receiver = 0; receiver < n; receiver++) {
+            if (owners[receiver] >= 0) {
+                assigned[owners[receiver]] = true;
+            }
+        }
+
+        for (int start = 0; start < n; start++) {
+            if (assigned[start]) {
+                continue;
+            }
+            // Slot n is a virtual receiver held by the giver being added.
+            owners[n] = start;
+            int current = n;
+            Arrays.fill(distances, INFINITY);
+            Arrays.fill(reached, false);
+            do {
+                reached[current] = true;
+                int giver = owners[current];
+                long delta = INFINITY;
+                int closest = -1;
+                int restricted = group.restrictionCount(giver);
+                int i = 0;
+                int j = penaltyOffsets[giver];
+                for (int receiver = 0; receiver < n; receiver++) {
+                    // Walk the sorted restriction and penalty rows alongside the receivers.
+                    boolean excluded = receiver == giver;
+                    while (i < restricted && group.restriction(giver, i) < receiver) {
+                        i++;
+                    }
+                    if (i < restricted && group.restriction(giver, i) == receiver) {
+                        excluded = true;
+                    }
+                    long cost = 0;
+                    if (j < penaltyOffsets[giver + 1] && (int) (penaltyRows[j] >>> 32) == receiver) {
+                        cost = (int) penaltyRows[j++];
+                    }
+                    if (reached[receiver]) {
+                        continue;
+                    }
+                    if (!excluded) {
+                        long reduced = cost - giverPotentials[giver] - receiverPotentials[receiver];
+                        if (reduced < distances[receiver]) {
+                            distances[receiver] = reduced;
+                            previous[receiver] = current;
+                        }
+                    }
+                    // Among equals, prefer a receiver without a giver: it ends the path.
+                    if (distances[receiver] < delta
+                            || (distances[receiver] == delta && closest >= 0 && owners[receiver] < 0
+                            && owners[closest] >= 0)) {
+                        delta = distances[receiver];
+                        closest = receiver;
+                    }
+                }
+                if (closest < 0 || delta >= INFINITY) {
+                    return false;
+                }
+                for (int receiver = 0; receiver <= n; receiver++) {
+                    if (reached[receiver]) {
+                        giverPotentials[owners[receiver]] += delta;
+                        receiverPotentials[receiver] -= delta;
+                    } else if (distances[receiver] < INFINITY) {
+                        distances[receiver] -= delta;
+                    }
+                }
+                current = closest;
+            } while (owners[current] >= 0);
+
+            // Flip the path back to the virtual receiver.
+            do {
+                int before = previous[current];
+                owners[current] = owners[before];
+                current = before;
+            } while (current != n);
+            counters.node();
+        }
+        return true;
+    }
+}
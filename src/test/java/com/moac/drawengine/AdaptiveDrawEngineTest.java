@@ -0,0 +1,145 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests, plus checks of the route each kind of group takes.
+ */
+public class AdaptiveDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new AdaptiveDrawEngine();
+    }
+
+    /**
+     * Members restricting each other at random with the given density.
+     */
+    private static Map<Long, Set<Long>> randomGroup(int n, double density, long seed) {
+        Random random = new Random(seed);
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>();
+        for (long giver = 1; giver <= n; giver++) {
+            Set<Long> restricted = new HashSet<Long>();
+            for (long receiver = 1; receiver <= n; receiver++) {
+                if (receiver != giver && random.nextDouble() < density) {
+                    restricted.add(receiver);
+                }
+            }
+            members.put(giver, restricted);
+        }
+        return members;
+    }
+
+    private static AdaptiveDrawEngine.Route draw(Map<Long, Set<Long>> members) {
+        AdaptiveDrawEngine engine = new AdaptiveDrawEngine(RandomSource.seeded(1));
+        try {
+            verifyResult(members, engine.generateDraw(members));
+        } catch (DrawFailureException ex) {
+            // Checked by the route taken.
+        }
+        for (AdaptiveDrawEngine.Route route : AdaptiveDrawEngine.Route.values()) {
+            if (engine.getRouteCount(route) == 1) {
+                return route;
+            }
+        }
+        throw new AssertionError("No route counted");
+    }
+
+    @Test
+    public void searchesSparseGroups() {
+        assertEquals(AdaptiveDrawEngine.Route.SEARCH, draw(randomGroup(1000, 0.01, 1)));
+        assertEquals(AdaptiveDrawEngine.Route.SEARCH, draw(TestDataUtils.readTestDataFile("pauls_test.txt")));
+    }
+
+    @Test
+    public void matchesDenseGroups() {
+        assertEquals(AdaptiveDrawEngine.Route.MATCHING, draw(randomGroup(300, 0.9, 2)));
+    }
+
+    @Test
+    public void matchesForcedGroups() {
+        assertEquals(AdaptiveDrawEngine.Route.MATCHING,
+                draw(TestDataUtils.readTestDataFile("possible_single_path.txt")));
+    }
+
+    /*
+     * Two members who can only give to the same member; the profile alone shows it's impossible.
+     */
+    @Test
+    public void rejectsForcedConflicts() {
+        Map<Long, Set<Long>> input = randomGroup(10, 0, 3);
+        input.put(1L, new HashSet<Long>(Arrays.asList(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)));
+        input.put(2L, new HashSet<Long>(Arrays.asList(1L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)));
+        try {
+            engine.generateDraw(input);
+            fail("Draw should fail as members 1 and 2 can only give to 10");
+        } catch (DrawFailureException ex) {
+            assertEquals("Members 1 and 2 can only give to member 10.", ex.getMessage());
+        }
+        assertEquals(AdaptiveDrawEngine.Route.REJECTED, draw(input));
+    }
+
+    /*
+     * Three members who can only give to the same two members, in an otherwise sparse group:
+     * the search proves it impossible, and the matching explains why.
+     */
+    @Test
+    public void fallsBackToMatching() {
+        Map<Long, Set<Long>> input = randomGroup(20, 0, 4);
+        for (long giver = 1; giver <= 3; giver++) {
+            Set<Long> restricted = new HashSet<Long>();
+            for (long receiver = 1; receiver <= 18; receiver++) {
+                if (receiver != giver) {
+                    restricted.add(receiver);
+                }
+            }
+            input.put(giver, restricted);
+        }
+        try {
+            engine.generateDraw(input);
+            fail("Draw should fail as three members can only give to two");
+        } catch (DrawFailureException ex) {
+            assertEquals("3 member(s) [1, 2, 3] can only give to 2 member(s) [19, 20]", ex.getMessage());
+        }
+        assertEquals(AdaptiveDrawEngine.Route.FALLBACK, draw(input));
+    }
+
+    @Test
+    public void reportsRoute() throws DrawFailureException {
+        DrawMetrics metrics = new DrawMetrics();
+        AdaptiveDrawEngine adaptive = new AdaptiveDrawEngine();
+        adaptive.setDrawListener(metrics);
+        adaptive.generateDraw(TestDataUtils.readTestDataFile("pauls_test.txt"));
+        adaptive.generateDraw(randomGroup(100, 0.9, 5));
+        assertEquals(Long.valueOf(1), metrics.getDrawsByEngine().get("AdaptiveDrawEngine/SEARCH"));
+        assertEquals(Long.valueOf(1), metrics.getDrawsByEngine().get("AdaptiveDrawEngine/MATCHING"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDensityThresholdOutOfRange() {
+        new AdaptiveDrawEngine(1.5, RandomSource.unseeded());
+    }
+}
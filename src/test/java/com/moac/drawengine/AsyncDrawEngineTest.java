@@ -0,0 +1,111 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests through the async API, plus timeouts and cancellation.
+ */
+public class AsyncDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new AsyncDrawEngine(new BasicDrawEngine());
+    }
+
+    @Test(timeout = 10000)
+    public void basicSearchTimesOutWithStatistics() throws Exception {
+        assertTimesOut(new BasicDrawEngine(RestartPolicy.never()), "BasicDrawEngine");
+    }
+
+    @Test(timeout = 10000)
+    public void recursiveSearchTimesOutWithStatistics() throws Exception {
+        assertTimesOut(new RecursiveDrawEngine(), "RecursiveDrawEngine");
+    }
+
+    /*
+     * The executor has one thread, so the second draw can only complete once the
+     * cancelled search has stopped.
+     */
+    @Test(timeout = 10000)
+    public void cancelStopsSearch() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncDrawEngine async = new AsyncDrawEngine(new BasicDrawEngine(RestartPolicy.never()), executor,
+                    0, TimeUnit.MILLISECONDS);
+            CompletableFuture<Map<Long, Long>> hard = async.generateDrawAsync(noOneGivesFirst());
+            Thread.sleep(50);
+            assertTrue(hard.cancel(true));
+
+            Map<Long, Set<Long>> easy = new HashMap<Long, Set<Long>>();
+            easy.put(1L, new HashSet<Long>());
+            easy.put(2L, new HashSet<Long>());
+            assertEquals(Long.valueOf(2L), async.generateDrawAsync(easy).get().get(1L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertTimesOut(DrawEngine searcher, String name) throws Exception {
+        AsyncDrawEngine async = new AsyncDrawEngine(searcher);
+        try {
+            async.generateDrawAsync(noOneGivesFirst(), 200, TimeUnit.MILLISECONDS).get();
+            fail("Draw should time out as no one gives m1");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof DrawTimeoutException);
+            DrawTimeoutException timeout = (DrawTimeoutException) ex.getCause();
+            assertEquals("No draw found within the deadline of 200 ms.", timeout.getMessage());
+            DrawStatistics statistics = timeout.getStatistics();
+            assertEquals(name, statistics.getEngine());
+            assertEquals(30, statistics.getMembers());
+            assertFalse(statistics.isSuccess());
+            assertTrue(statistics.getNodes() > 0);
+            assertTrue(statistics.getBacktracks() > 0);
+            assertTrue(statistics.getSearchNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    /*
+     * No one can give to member 1, but the searches can only find that out exhaustively.
+     */
+    private static Map<Long, Set<Long>> noOneGivesFirst() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (int i = 1; i <= 30; i++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            if (i != 1) {
+                restrictions.add(1L);
+            }
+            input.put((long) i, restrictions);
+        }
+        return input;
+    }
+}
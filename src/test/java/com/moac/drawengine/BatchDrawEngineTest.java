@@ -0,0 +1,145 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class BatchDrawEngineTest {
+
+    @Test
+    public void drawsEachGroup() throws InterruptedException {
+        Map<String, Map<Long, Set<Long>>> groups = new LinkedHashMap<String, Map<Long, Set<Long>>>();
+        groups.put("complex", TestDataUtils.readTestDataFile("possible_complex.txt"));
+        groups.put("impossible", TestDataUtils.readTestDataFile("impossible_symmetrical.txt"));
+        groups.put("pauls", TestDataUtils.readTestDataFile("pauls_test.txt"));
+        groups.put("empty", TestDataUtils.readTestDataFile("impossible_zero_members.txt"));
+        for (int g = 0; g < 100; g++) {
+            Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>();
+            for (int i = 0; i <= g + 1; i++) {
+                members.put((long) i, new HashSet<Long>());
+            }
+            groups.put("group" + g, members);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Map<String, DrawOutcome> outcomes = new BatchDrawEngine(new IndexedDrawEngine(), executor, 4).drawAll(groups);
+
+            // Outcomes should be in the same order as the groups
+            assertEquals(new ArrayList<String>(groups.keySet()), new ArrayList<String>(outcomes.keySet()));
+            for (Map.Entry<String, DrawOutcome> entry : outcomes.entrySet()) {
+                DrawOutcome outcome = entry.getValue();
+                if (entry.getKey().equals("impossible") || entry.getKey().equals("empty")) {
+                    assertFalse(outcome.isSuccess());
+                    assertNotNull(outcome.getFailure());
+                    assertNull(outcome.getDraw());
+                } else {
+                    assertTrue(outcome.isSuccess());
+                    assertNull(outcome.getFailure());
+                    AbstractDrawEngineTest.verifyResult(groups.get(entry.getKey()), outcome.getDraw());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void drawsNothing() throws InterruptedException {
+        Map<Long, DrawOutcome> outcomes = new BatchDrawEngine(new BasicDrawEngine())
+                .drawAll(new HashMap<Long, Map<Long, Set<Long>>>());
+        assertTrue(outcomes.isEmpty());
+    }
+
+    /*
+     * An unexpected exception from one group, and a null group key, mustn't lose the other outcomes.
+     */
+    @Test
+    public void recordsUnexpectedExceptions() throws InterruptedException {
+        final Map<Long, Set<Long>> malformed = new HashMap<Long, Set<Long>>();
+        malformed.put(1L, null);
+        malformed.put(2L, null);
+        final DrawEngine indexed = new IndexedDrawEngine();
+        DrawEngine engine = new DrawEngine() {
+            public Map<Long, Long> generateDraw(Map<Long, Set<Long>> members) throws DrawFailureException {
+                if (members == malformed) {
+                    throw new IllegalStateException("Malformed group");
+                }
+                return indexed.generateDraw(members);
+            }
+        };
+        Map<String, Map<Long, Set<Long>>> groups = new HashMap<String, Map<Long, Set<Long>>>();
+        groups.put(null, TestDataUtils.readTestDataFile("pauls_test.txt"));
+        groups.put("malformed", malformed);
+        groups.put("complex", TestDataUtils.readTestDataFile("possible_complex.txt"));
+
+        Map<String, DrawOutcome> outcomes = new BatchDrawEngine(engine).drawAll(groups);
+        assertEquals(3, outcomes.size());
+        assertTrue(outcomes.get(null).isSuccess());
+        assertTrue(outcomes.get("complex").isSuccess());
+        DrawOutcome failed = outcomes.get("malformed");
+        assertFalse(failed.isSuccess());
+        assertTrue(failed.getFailure().getCause() instanceof IllegalStateException);
+    }
+
+    /*
+     * A stack overflow, as from a recursive engine on a large group, fails only its own group.
+     */
+    @Test
+    public void recordsStackOverflows() throws InterruptedException {
+        final Map<Long, Set<Long>> deep = new HashMap<Long, Set<Long>>();
+        for (long i = 1; i <= 100; i++) {
+            deep.put(i, new HashSet<Long>());
+        }
+        final DrawEngine indexed = new IndexedDrawEngine();
+        DrawEngine engine = new DrawEngine() {
+            public Map<Long, Long> generateDraw(Map<Long, Set<Long>> members) throws DrawFailureException {
+                if (members == deep) {
+                    throw new StackOverflowError();
+                }
+                return indexed.generateDraw(members);
+            }
+        };
+        Map<String, Map<Long, Set<Long>>> groups = new LinkedHashMap<String, Map<Long, Set<Long>>>();
+        groups.put("deep", deep);
+        for (int g = 0; g < 10; g++) {
+            groups.put("pauls" + g, TestDataUtils.readTestDataFile("pauls_test.txt"));
+        }
+
+        // The largest group is drawn first, ahead of the rest of its chunk.
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Map<String, DrawOutcome> outcomes = new BatchDrawEngine(engine, executor, 1).drawAll(groups);
+            assertEquals(11, outcomes.size());
+            DrawOutcome failed = outcomes.get("deep");
+            assertFalse(failed.isSuccess());
+            assertTrue(failed.getFailure().getCause() instanceof StackOverflowError);
+            for (int g = 0; g < 10; g++) {
+                assertTrue(outcomes.get("pauls" + g).isSuccess());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
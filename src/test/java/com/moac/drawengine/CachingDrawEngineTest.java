@@ -0,0 +1,117 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests through the cache, plus hits, misses and eviction.
+ */
+public class CachingDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new CachingDrawEngine(new BasicDrawEngine());
+    }
+
+    /*
+     * The same group in a different order, with a self restriction and a restriction on a
+     * non-member, is the same canonical group.
+     */
+    @Test
+    public void equivalentGroupsHit() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        Map<Long, Set<Long>> equivalent = new TreeMap<Long, Set<Long>>(Collections.<Long>reverseOrder());
+        for (Map.Entry<Long, Set<Long>> entry : input.entrySet()) {
+            Set<Long> restrictions = new TreeSet<Long>(entry.getValue());
+            restrictions.add(entry.getKey());
+            restrictions.add(-1L);
+            equivalent.put(entry.getKey(), restrictions);
+        }
+
+        CachingDrawEngine caching = new CachingDrawEngine(new IndexedDrawEngine());
+        verifyResult(input, caching.generateDraw(input));
+        verifyResult(input, caching.generateDraw(equivalent));
+        assertTrue(caching.checkFeasibility(input).isFeasible());
+        assertEquals(1, caching.getMisses());
+        assertEquals(2, caching.getHits());
+        assertEquals(1, caching.size());
+    }
+
+    @Test
+    public void impossibleGroupFailsWithoutSearching() {
+        final int[] draws = new int[1];
+        CachingDrawEngine caching = new CachingDrawEngine(new DrawEngine() {
+            public Map<Long, Long> generateDraw(Map<Long, Set<Long>> members) throws DrawFailureException {
+                draws[0]++;
+                throw new DrawFailureException();
+            }
+        });
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("impossible_not_symmetrical.txt");
+        for (int i = 0; i < 3; i++) {
+            try {
+                caching.generateDraw(input);
+                fail("Draw should fail as only possible assignment is restricted for member 1");
+            } catch (DrawFailureException ex) {
+                assertNotNull(ex.getMessage());
+            }
+        }
+        assertEquals(0, draws[0]);
+        assertEquals(Collections.singletonMap(1L, Collections.singleton(2L)),
+                caching.checkFeasibility(input).getRestrictionsToRemove());
+        assertEquals(1, caching.getMisses());
+        assertEquals(3, caching.getHits());
+    }
+
+    @Test
+    public void cachedResultsRepeat() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        CachingDrawEngine caching = new CachingDrawEngine(new BasicDrawEngine(), 16, true);
+        Map<Long, Long> first = caching.generateDraw(input);
+        verifyResult(input, first);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(first, caching.generateDraw(input));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws DrawFailureException {
+        CachingDrawEngine caching = new CachingDrawEngine(new MatchingDrawEngine(), 2, false);
+        Map<Long, Set<Long>> a = TestDataUtils.readTestDataFile("possible_simple.txt");
+        Map<Long, Set<Long>> b = TestDataUtils.readTestDataFile("possible_complex.txt");
+        Map<Long, Set<Long>> c = TestDataUtils.readTestDataFile("possible_single_path.txt");
+        caching.generateDraw(a);
+        caching.generateDraw(b);
+        caching.generateDraw(a);
+        caching.generateDraw(c);
+        assertEquals(1, caching.getEvictions());
+        assertEquals(2, caching.size());
+
+        // a was used more recently than b, so is still cached.
+        caching.generateDraw(a);
+        caching.generateDraw(b);
+        assertEquals(2, caching.getHits());
+        assertEquals(4, caching.getMisses());
+    }
+}
@@ -0,0 +1,98 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+public class CompiledGroupTest {
+
+    @Test
+    public void repeatedDraws() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        CompiledGroup group = CompiledGroup.compile(input);
+        assertTrue(group.isFeasible());
+        assertNull(group.getBlockingSet());
+
+        IndexedDrawEngine engine = new IndexedDrawEngine();
+        for (int i = 0; i < 100; i++) {
+            AbstractDrawEngineTest.verifyResult(input, engine.generateDraw(group).asMap());
+        }
+    }
+
+    @Test
+    public void largeGroupWithoutMatrix() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        int size = CompiledGroup.MAX_MATRIX_SIZE + 1;
+        for (long i = 1; i <= size; i++) {
+            input.put(i, new HashSet<Long>(Arrays.asList(i % size + 1, (i + 1) % size + 1)));
+        }
+        CompiledGroup group = CompiledGroup.compile(input);
+        assertTrue(group.isFeasible());
+        AbstractDrawEngineTest.verifyResult(input, new IndexedDrawEngine().generateDraw(group).asMap());
+    }
+
+    @Test
+    public void impossibleFailsWithBlockingSet() {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("impossible_not_symmetrical.txt");
+        CompiledGroup group = CompiledGroup.compile(input);
+        assertFalse(group.isFeasible());
+        try {
+            new IndexedDrawEngine().generateDraw(group);
+            fail("Should be impossible as one restricts the other");
+        } catch (DrawFailureException ex) {
+            assertEquals(group.getBlockingSet(), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        final Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        final CompiledGroup group = CompiledGroup.compile(input);
+        final IndexedDrawEngine engine = new IndexedDrawEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<DrawResult>> draws = new ArrayList<Future<DrawResult>>();
+            for (int i = 0; i < 200; i++) {
+                draws.add(executor.submit(new Callable<DrawResult>() {
+                    public DrawResult call() throws DrawFailureException {
+                        return engine.generateDraw(group);
+                    }
+                }));
+            }
+            for (Future<DrawResult> draw : draws) {
+                AbstractDrawEngineTest.verifyResult(input, draw.get().asMap());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void seededDrawsMatchUncompiled() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        Map<Long, Long> compiled = new IndexedDrawEngine(RandomSource.seeded(9))
+                .generateDraw(CompiledGroup.compile(input)).asMap();
+        assertEquals(new IndexedDrawEngine(RandomSource.seeded(9)).generateDraw(input), compiled);
+    }
+}
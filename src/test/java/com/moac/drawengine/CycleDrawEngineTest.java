@@ -0,0 +1,147 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests as single loop draws, plus checks of loop lengths.
+ */
+public class CycleDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new CycleDrawEngine();
+    }
+
+    private static int shortestCycle(Map<Long, Long> draw) {
+        int shortest = Integer.MAX_VALUE;
+        Set<Long> seen = new HashSet<Long>();
+        for (Long start : draw.keySet()) {
+            int length = 0;
+            for (Long member = start; seen.add(member); member = draw.get(member)) {
+                length++;
+            }
+            if (length > 0) {
+                shortest = Math.min(shortest, length);
+            }
+        }
+        return shortest;
+    }
+
+    /*
+     * Members 5 and 6 can only give to each other, so there is no single loop.
+     */
+    @Override
+    @Test(expected = DrawFailureException.class)
+    public void possibleComplexRestrictions() throws DrawFailureException {
+        engine.generateDraw(TestDataUtils.readTestDataFile("possible_complex.txt"));
+    }
+
+    @Test
+    public void singleCycleManyMembers() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 0; i < 10000; i++) {
+            // Couples can't give to each other.
+            input.put(i, new HashSet<Long>(Collections.singleton(i ^ 1)));
+        }
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+        assertEquals(10000, shortestCycle(result));
+    }
+
+    @Test
+    public void minimumCycleLength() throws DrawFailureException {
+        DrawEngine minimum = new CycleDrawEngine(4, 0, TimeUnit.MILLISECONDS, RandomSource.sequence(3));
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        for (int i = 0; i < 100; i++) {
+            Map<Long, Long> result = minimum.generateDraw(input);
+            verifyResult(input, result);
+            assertTrue(shortestCycle(result) >= 4);
+        }
+    }
+
+    /*
+     * Two triangles, 1-2-3 and 4-5-6, joined only by 1 and 4 being able to give to each
+     * other: there is no single loop, and a matching using 1<->4 leaves the 2-3 and 5-6
+     * loops with no swap to join them, so the search has to find the two triangles.
+     */
+    @Test
+    public void twoLoopsFoundBySearch() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        input.put(1L, new HashSet<Long>(Arrays.asList(5L, 6L)));
+        input.put(2L, new HashSet<Long>(Arrays.asList(4L, 5L, 6L)));
+        input.put(3L, new HashSet<Long>(Arrays.asList(4L, 5L, 6L)));
+        input.put(4L, new HashSet<Long>(Arrays.asList(2L, 3L)));
+        input.put(5L, new HashSet<Long>(Arrays.asList(1L, 2L, 3L)));
+        input.put(6L, new HashSet<Long>(Arrays.asList(1L, 2L, 3L)));
+        DrawEngine minimum = new CycleDrawEngine(3, 0, TimeUnit.MILLISECONDS, RandomSource.sequence(5));
+        for (int i = 0; i < 200; i++) {
+            Map<Long, Long> result = minimum.generateDraw(input);
+            verifyResult(input, result);
+            assertEquals(3, shortestCycle(result));
+        }
+    }
+
+    /*
+     * Only the fixed single path 1->2->...->6->1 is possible, which the joining of loops
+     * is unlikely to find, so the backtracking search should.
+     */
+    @Test
+    public void singlePathFoundBySearch() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_single_path.txt");
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+        assertEquals(6, shortestCycle(result));
+    }
+
+    /*
+     * Two halves, each only able to give within itself, except that member 0 can give anywhere:
+     * a perfect matching exists but no single loop. The search is exponential, so the deadline ends it.
+     */
+    @Test(timeout = 10000)
+    public void failAfterDeadline() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        int half = 200;
+        for (long i = 0; i < 2 * half; i++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            if (i != 0) {
+                for (long j = 0; j < 2 * half; j++) {
+                    if ((j < half) != (i < half)) {
+                        restrictions.add(j);
+                    }
+                }
+            }
+            input.put(i, restrictions);
+        }
+        try {
+            new CycleDrawEngine(CycleDrawEngine.SINGLE_CYCLE, 200, TimeUnit.MILLISECONDS,
+                    RandomSource.seeded(1)).generateDraw(input);
+            fail("There is no single loop");
+        } catch (DrawFailureException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("deadline"));
+        }
+    }
+}
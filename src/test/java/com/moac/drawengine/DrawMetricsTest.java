@@ -0,0 +1,110 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class DrawMetricsTest {
+
+    @Test
+    public void recordsDraws() throws DrawFailureException {
+        final List<DrawStatistics> draws = new ArrayList<DrawStatistics>();
+        DrawMetrics metrics = new DrawMetrics() {
+            @Override
+            public void onDraw(DrawStatistics statistics) {
+                super.onDraw(statistics);
+                draws.add(statistics);
+            }
+        };
+        BasicDrawEngine engine = new BasicDrawEngine(RestartPolicy.never(), RandomSource.seeded(3));
+        engine.setDrawListener(metrics);
+
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        engine.generateDraw(input);
+        try {
+            engine.generateDraw(TestDataUtils.readTestDataFile("impossible_too_restricted_complex.txt"));
+            fail("Draw should fail as no one gives m1");
+        } catch (DrawFailureException expected) {
+            // Expected
+        }
+
+        assertEquals(2, metrics.getDraws());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(2, metrics.getLatencyNanos().getCount());
+
+        DrawStatistics success = draws.get(0);
+        assertTrue(success.isSuccess());
+        assertEquals("BasicDrawEngine", success.getEngine());
+        assertEquals(10, success.getMembers());
+        assertEquals(3, success.getSeed());
+        assertEquals(10, success.getNodes() - success.getBacktracks());
+        assertTrue(success.getTotalNanos() > 0);
+
+        DrawStatistics failure = draws.get(1);
+        assertFalse(failure.isSuccess());
+        assertTrue(failure.getBacktracks() > 0);
+        assertTrue(failure.getDeepestRollback() > 0);
+        assertTrue(failure.getMaxFailedPaths() > 0);
+        assertEquals(metrics.getBacktracks(), success.getBacktracks() + failure.getBacktracks());
+    }
+
+    @Test
+    public void recordsAllEngines() throws DrawFailureException {
+        DrawMetrics metrics = new DrawMetrics();
+        IndexedDrawEngine indexed = new IndexedDrawEngine();
+        indexed.setDrawListener(metrics);
+        IterativeDrawEngine iterative = new IterativeDrawEngine();
+        iterative.setDrawListener(metrics);
+        RecursiveDrawEngine recursive = new RecursiveDrawEngine();
+        recursive.setDrawListener(metrics);
+        MatchingDrawEngine matching = new MatchingDrawEngine();
+        matching.setDrawListener(metrics);
+        PropagatingDrawEngine propagating = new PropagatingDrawEngine();
+        propagating.setDrawListener(metrics);
+        PortfolioDrawEngine portfolio = new PortfolioDrawEngine();
+        portfolio.setDrawListener(metrics);
+
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        for (DrawEngine engine : Arrays.<DrawEngine>asList(indexed, iterative, recursive, matching, propagating, portfolio)) {
+            engine.generateDraw(input);
+        }
+        assertEquals(6, metrics.getDraws());
+        assertEquals(0, metrics.getFailures());
+        assertEquals(6, metrics.getDrawsByEngine().size());
+        assertEquals(Long.valueOf(1), metrics.getDrawsByEngine().get("MatchingDrawEngine"));
+        assertTrue(metrics.getNodes() >= 6 * input.size());
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(0);
+        assertEquals(101, histogram.getCount());
+        assertEquals(1, histogram.getBucket(0));
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(127, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,120 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+public class DrawResultTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<Long, Long> draw() throws DrawFailureException {
+        return new MatchingDrawEngine().generateDraw(TestDataUtils.readTestDataFile("pauls_test.txt"));
+    }
+
+    @Test
+    public void lookupsBothWays() throws DrawFailureException {
+        Map<Long, Long> draw = draw();
+        DrawResult result = DrawResult.of(draw);
+        assertEquals(draw.size(), result.size());
+        for (Map.Entry<Long, Long> entry : draw.entrySet()) {
+            assertEquals((long) entry.getValue(), result.receiverOf(entry.getKey()));
+            assertEquals((long) entry.getKey(), result.giverOf(entry.getValue()));
+            int giver = result.indexOf(entry.getKey());
+            assertEquals(giver, result.giverIndex(result.receiverIndex(giver)));
+        }
+    }
+
+    @Test
+    public void mapView() throws DrawFailureException {
+        Map<Long, Long> draw = draw();
+        Map<Long, Long> view = DrawResult.of(draw).asMap();
+        assertEquals(draw, view);
+        assertEquals(view, draw);
+        assertEquals(draw.hashCode(), view.hashCode());
+        assertNull(view.get(-1L));
+        assertFalse(view.containsKey("1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mapViewIsReadOnly() throws DrawFailureException {
+        DrawResult.of(draw()).asMap().put(1L, 2L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notMember() throws DrawFailureException {
+        DrawResult.of(draw()).receiverOf(-1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notDraw() {
+        Map<Long, Long> draw = new HashMap<Long, Long>();
+        draw.put(1L, 2L);
+        draw.put(2L, 2L);
+        DrawResult.of(draw);
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        DrawResult result = new MatchingDrawEngine().generateDraw(
+                CompiledGroup.compile(TestDataUtils.readTestDataFile("possible_complex.txt")));
+        Path path = folder.newFile().toPath();
+        result.write(path);
+        assertEquals(result.byteSize(), path.toFile().length());
+        assertEquals(result, DrawResult.read(path));
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) result.byteSize() + 3);
+        buffer.position(3);
+        result.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void bufferRoundTripsInEitherByteOrder() throws Exception {
+        DrawResult result = new MatchingDrawEngine().generateDraw(
+                CompiledGroup.compile(TestDataUtils.readTestDataFile("possible_complex.txt")));
+        byte[] bigEndian = null;
+        for (ByteOrder order : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) result.byteSize() + 3).order(order);
+            buffer.position(3);
+            result.writeTo(buffer);
+            buffer.position(3);
+            assertEquals(result, DrawResult.read(buffer));
+            assertFalse(buffer.hasRemaining());
+            assertEquals(order, buffer.order());
+
+            // The same bytes whatever the buffer's order.
+            byte[] bytes = Arrays.copyOfRange(buffer.array(), 3, buffer.capacity());
+            if (bigEndian == null) {
+                bigEndian = bytes;
+            }
+            assertArrayEquals(bigEndian, bytes);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+public class DrawSimulatorTest {
+
+    @Test
+    public void countsEveryPair() throws InterruptedException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        SimulationReport report = new DrawSimulator().simulate(CompiledGroup.compile(input), 100000,
+                RandomSource.unseeded());
+        assertEquals(100000, report.getDraws());
+        assertEquals(1.0, report.getSuccessRate(), 0);
+        assertEquals(100000, report.getLatencyNanos().getCount());
+        assertEquals(100000, report.getBacktrackCounts().getCount());
+        assertTrue(report.hasPairCounts());
+
+        for (Long giver : input.keySet()) {
+            long total = 0;
+            for (Long receiver : input.keySet()) {
+                long count = report.getPairCount(giver, receiver);
+                if (giver.equals(receiver) || input.get(giver).contains(receiver)) {
+                    assertEquals(0, count);
+                }
+                total += count;
+            }
+            assertEquals(100000, total);
+        }
+    }
+
+    /*
+     * Draws are chunked and seeded by chunk, so the number of threads doesn't matter.
+     */
+    @Test
+    public void seededSimulationsRepeat() throws InterruptedException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        CompiledGroup group = CompiledGroup.compile(input);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            SimulationReport single = new DrawSimulator(executor, 1, Long.MAX_VALUE)
+                    .simulate(group, 20000, RandomSource.seeded(22));
+            SimulationReport parallel = new DrawSimulator(executor, 3, Long.MAX_VALUE)
+                    .simulate(group, 20000, RandomSource.seeded(22));
+            for (Long giver : input.keySet()) {
+                for (Long receiver : input.keySet()) {
+                    assertEquals(single.getPairCount(giver, receiver), parallel.getPairCount(giver, receiver));
+                }
+            }
+            for (int i = 0; i < LogHistogram.BUCKETS; i++) {
+                assertEquals(single.getBacktrackCounts().getBucket(i), parallel.getBacktrackCounts().getBucket(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Members of a densely restricted group often have to change an earlier choice, so
+     * with no backtracks allowed some draws fail that would otherwise succeed.
+     */
+    @Test
+    public void backtrackLimitCountsAsFailure() throws InterruptedException {
+        Random random = new Random(22);
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long giver = 1; giver <= 12; giver++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            for (long receiver = 1; receiver <= 12; receiver++) {
+                if (random.nextInt(3) < 2) {
+                    restrictions.add(receiver);
+                }
+            }
+            input.put(giver, restrictions);
+        }
+        CompiledGroup group = CompiledGroup.compile(input);
+        assertTrue(group.isFeasible());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SimulationReport limited = new DrawSimulator(executor, 1, 0)
+                    .simulate(group, 10000, RandomSource.seeded(1));
+            assertTrue(limited.getFailures() > 0);
+            assertEquals(limited.getFailures(), 10000 - limited.getBacktrackCounts().getBucket(0));
+            SimulationReport exhaustive = new DrawSimulator(executor, 1, Long.MAX_VALUE)
+                    .simulate(group, 10000, RandomSource.seeded(1));
+            assertEquals(1.0, exhaustive.getSuccessRate(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void impossibleGroupAlwaysFails() throws InterruptedException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("impossible_not_symmetrical.txt");
+        SimulationReport report = new DrawSimulator().simulate(CompiledGroup.compile(input), 1000,
+                RandomSource.unseeded());
+        assertEquals(1000, report.getFailures());
+        assertEquals(0.0, report.getSuccessRate(), 0);
+    }
+}
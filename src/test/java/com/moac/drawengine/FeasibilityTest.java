@@ -0,0 +1,177 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+public class FeasibilityTest {
+
+    @Test
+    public void possibleGroupsAreFeasible() {
+        for (String file : new String[]{"possible_simple.txt", "possible_complex.txt", "possible_single_path.txt",
+                "pauls_test.txt"}) {
+            Feasibility feasibility = Feasibility.check(TestDataUtils.readTestDataFile(file));
+            assertTrue(file, feasibility.isFeasible());
+            assertEquals(0, feasibility.getDeficiency());
+            assertTrue(feasibility.getOverRestricted().isEmpty());
+            assertTrue(feasibility.getRestrictionsToRemove().isEmpty());
+        }
+    }
+
+    @Test
+    public void notSymmetrical() {
+        Feasibility feasibility = Feasibility.check(TestDataUtils.readTestDataFile("impossible_not_symmetrical.txt"));
+        assertFalse(feasibility.isFeasible());
+        assertEquals(1, feasibility.getDeficiency());
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L)), feasibility.getOverRestricted());
+        assertEquals(Collections.singletonMap(1L, Collections.singleton(2L)), feasibility.getRestrictionsToRemove());
+    }
+
+    @Test
+    public void symmetrical() {
+        Feasibility feasibility = Feasibility.check(TestDataUtils.readTestDataFile("impossible_symmetrical.txt"));
+        assertFalse(feasibility.isFeasible());
+        assertEquals(2, feasibility.getDeficiency());
+        assertEquals(2, count(feasibility.getRestrictionsToRemove()));
+    }
+
+    @Test
+    public void tooFewMembers() {
+        assertFalse(Feasibility.check(TestDataUtils.readTestDataFile("impossible_single_member.txt")).isFeasible());
+        assertFalse(Feasibility.check(new HashMap<Long, Set<Long>>()).isFeasible());
+    }
+
+    /*
+     * Member 1 restricts everyone and everyone restricts member 1, so one member is left
+     * over but two restrictions have to go.
+     */
+    @Test
+    public void isolatedMemberNeedsTwoRemovals() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        input.put(1L, new HashSet<Long>(Arrays.asList(2L, 3L)));
+        input.put(2L, Collections.singleton(1L));
+        input.put(3L, Collections.singleton(1L));
+        Feasibility feasibility = Feasibility.check(input);
+        assertEquals(1, feasibility.getDeficiency());
+        assertEquals(Collections.singleton(1L), feasibility.getOverRestricted());
+        assertEquals(2, count(feasibility.getRestrictionsToRemove()));
+        assertTrue(Feasibility.check(remove(input, feasibility.getRestrictionsToRemove())).isFeasible());
+    }
+
+    /*
+     * Compares against brute force on small random groups: the verdict, that removing the
+     * suggested restrictions works and that no fewer removals would.
+     */
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(19);
+        for (int trial = 0; trial < 300; trial++) {
+            int n = 2 + random.nextInt(4);
+            Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+            List<long[]> restrictions = new ArrayList<long[]>();
+            for (long giver = 1; giver <= n; giver++) {
+                Set<Long> restricted = new HashSet<Long>();
+                for (long receiver = 1; receiver <= n; receiver++) {
+                    if (receiver != giver && random.nextInt(3) > 0) {
+                        restricted.add(receiver);
+                        restrictions.add(new long[]{giver, receiver});
+                    }
+                }
+                input.put(giver, restricted);
+            }
+
+            Feasibility feasibility = Feasibility.check(input);
+            assertEquals(canDraw(input), feasibility.isFeasible());
+            Map<Long, Set<Long>> toRemove = feasibility.getRestrictionsToRemove();
+            for (Map.Entry<Long, Set<Long>> entry : toRemove.entrySet()) {
+                assertTrue(input.get(entry.getKey()).containsAll(entry.getValue()));
+            }
+            assertTrue(canDraw(remove(input, toRemove)));
+            assertFalse(canDrawRemovingAny(input, restrictions, 0, count(toRemove) - 1));
+        }
+    }
+
+    private static boolean canDrawRemovingAny(Map<Long, Set<Long>> input, List<long[]> restrictions, int from,
+                                              int removals) {
+        if (removals < 0) {
+            return false;
+        }
+        if (canDraw(input)) {
+            return true;
+        }
+        for (int i = from; i < restrictions.size(); i++) {
+            long[] restriction = restrictions.get(i);
+            input.get(restriction[0]).remove(restriction[1]);
+            boolean drawn = canDrawRemovingAny(input, restrictions, i + 1, removals - 1);
+            input.get(restriction[0]).add(restriction[1]);
+            if (drawn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean canDraw(Map<Long, Set<Long>> input) {
+        List<Long> members = new ArrayList<Long>(input.keySet());
+        return canDraw(input, members, 0, new HashSet<Long>());
+    }
+
+    private static boolean canDraw(Map<Long, Set<Long>> input, List<Long> members, int giver, Set<Long> taken) {
+        if (giver == members.size()) {
+            return true;
+        }
+        Long from = members.get(giver);
+        for (Long to : members) {
+            if (!to.equals(from) && !taken.contains(to) && !input.get(from).contains(to)) {
+                taken.add(to);
+                boolean drawn = canDraw(input, members, giver + 1, taken);
+                taken.remove(to);
+                if (drawn) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Map<Long, Set<Long>> remove(Map<Long, Set<Long>> input, Map<Long, Set<Long>> toRemove) {
+        Map<Long, Set<Long>> result = new HashMap<Long, Set<Long>>();
+        for (Map.Entry<Long, Set<Long>> entry : input.entrySet()) {
+            Set<Long> restrictions = new HashSet<Long>(entry.getValue());
+            if (toRemove.containsKey(entry.getKey())) {
+                restrictions.removeAll(toRemove.get(entry.getKey()));
+            }
+            result.put(entry.getKey(), restrictions);
+        }
+        return result;
+    }
+
+    private static int count(Map<Long, Set<Long>> restrictions) {
+        int count = 0;
+        for (Set<Long> restricted : restrictions.values()) {
+            count += restricted.size();
+        }
+        return count;
+    }
+}
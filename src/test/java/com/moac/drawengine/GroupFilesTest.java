@@ -0,0 +1,129 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+public class GroupFilesTest {
+
+    private static final String[] FILES = {"ignore_self_restrict.txt", "impossible_not_symmetrical.txt",
+            "impossible_symmetrical.txt", "impossible_too_restricted_complex.txt", "pauls_test.txt",
+            "possible_complex.txt", "possible_simple.txt", "possible_single_path.txt"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path resource(String filename) throws Exception {
+        return new File(ClassLoader.getSystemClassLoader().getResource(filename).toURI()).toPath();
+    }
+
+    private Path write(String text) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+
+    private static void assertSameGroup(CompiledGroup expected, CompiledGroup actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.id(i), actual.id(i));
+            assertEquals(expected.restrictionCount(i), actual.restrictionCount(i));
+            for (int j = 0; j < expected.restrictionCount(i); j++) {
+                assertEquals(expected.restriction(i, j), actual.restriction(i, j));
+            }
+        }
+        assertEquals(expected.isFeasible(), actual.isFeasible());
+    }
+
+    @Test
+    public void readsTestData() throws Exception {
+        for (String filename : FILES) {
+            CompiledGroup expected = CompiledGroup.compile(TestDataUtils.readTestDataFile(filename));
+            assertSameGroup(expected, GroupFiles.readText(resource(filename)));
+        }
+    }
+
+    @Test
+    public void roundTrips() throws Exception {
+        for (String filename : FILES) {
+            CompiledGroup group = GroupFiles.readText(resource(filename));
+            Path text = folder.newFile().toPath();
+            GroupFiles.writeText(group, text);
+            assertSameGroup(group, GroupFiles.readText(text));
+
+            Path binary = folder.newFile().toPath();
+            GroupFiles.writeBinary(group, binary);
+            assertSameGroup(group, GroupFiles.readBinary(binary));
+        }
+    }
+
+    @Test
+    public void largeGroup() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (long i = 1; i <= 100000; i++) {
+            text.append(-i).append(' ').append(-(i % 100000 + 1)).append(",").append(Long.MIN_VALUE).append('\n');
+        }
+        CompiledGroup group = GroupFiles.readText(write(text.toString()));
+        assertEquals(100000, group.size());
+        assertEquals(-100000L, group.id(0));
+        assertEquals(1, group.restrictionCount(0));
+        assertEquals(-1L, group.id(group.restriction(0, 0)));
+        assertTrue(group.isFeasible());
+    }
+
+    @Test
+    public void duplicateMemberNamesLines() throws Exception {
+        try {
+            GroupFiles.readText(write("# Members\n1 2\n2\n\n3 1,2\n2 3\n"));
+            fail("Member 2 is duplicated");
+        } catch (IOException ex) {
+            assertEquals("Duplicate member 2 at line 6, first at line 3", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidCharacterNamesLine() throws Exception {
+        try {
+            GroupFiles.readText(write("1 2\n2 x\n"));
+            fail("Not an id");
+        } catch (IOException ex) {
+            assertEquals("Unexpected character 'x' at line 2", ex.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBinary() throws Exception {
+        Path binary = folder.newFile().toPath();
+        GroupFiles.writeBinary(GroupFiles.readText(resource("pauls_test.txt")), binary);
+        byte[] bytes = Files.readAllBytes(binary);
+        Files.write(binary, Arrays.copyOf(bytes, bytes.length - 4));
+        GroupFiles.readBinary(binary);
+    }
+}
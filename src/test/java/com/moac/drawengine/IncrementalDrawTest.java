@@ -0,0 +1,129 @@
+package com.moac.drawengine;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class IncrementalDrawTest {
+
+    private static Map<Long, Set<Long>> unrestricted(int size) {
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>();
+        for (long i = 1; i <= size; i++) {
+            members.put(i, new HashSet<Long>());
+        }
+        return members;
+    }
+
+    private static IncrementalDraw draw(Map<Long, Set<Long>> members) throws DrawFailureException {
+        return new IncrementalDraw(members, new MatchingDrawEngine(RandomSource.seeded(1)).generateDraw(members),
+                RandomSource.seeded(2));
+    }
+
+    private static void assertOnlyChanged(Map<Long, Long> before, IncrementalDraw draw, Set<Long> changed) {
+        for (Map.Entry<Long, Long> entry : draw.getDraw().entrySet()) {
+            if (!changed.contains(entry.getKey())) {
+                assertEquals(before.get(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void addMember() throws DrawFailureException {
+        IncrementalDraw draw = draw(unrestricted(1000));
+        Map<Long, Long> before = new HashMap<Long, Long>(draw.getDraw());
+
+        Set<Long> changed = draw.apply(new DrawDelta().addMember(1001, Collections.singleton(1L)));
+        AbstractDrawEngineTest.verifyResult(draw.getMembers(), draw.getDraw());
+        assertEquals(1001, draw.getDraw().size());
+        assertTrue(changed.contains(1001L));
+        assertTrue(changed.size() <= 3);
+        assertOnlyChanged(before, draw, changed);
+    }
+
+    @Test
+    public void removeMember() throws DrawFailureException {
+        IncrementalDraw draw = draw(unrestricted(1000));
+        Map<Long, Long> before = new HashMap<Long, Long>(draw.getDraw());
+
+        Set<Long> changed = draw.apply(new DrawDelta().removeMember(500));
+        AbstractDrawEngineTest.verifyResult(draw.getMembers(), draw.getDraw());
+        assertEquals(999, draw.getDraw().size());
+        assertTrue(changed.size() <= 2);
+        assertOnlyChanged(before, draw, changed);
+    }
+
+    @Test
+    public void removeMemberOfPair() throws DrawFailureException {
+        Map<Long, Set<Long>> members = unrestricted(3);
+        Map<Long, Long> pairs = new HashMap<Long, Long>();
+        pairs.put(1L, 2L);
+        pairs.put(2L, 1L);
+        pairs.put(3L, 4L);
+        pairs.put(4L, 3L);
+        members.put(4L, new HashSet<Long>());
+        IncrementalDraw draw = new IncrementalDraw(members, pairs);
+
+        draw.apply(new DrawDelta().removeMember(2));
+        AbstractDrawEngineTest.verifyResult(draw.getMembers(), draw.getDraw());
+    }
+
+    @Test
+    public void addRestrictionOnAssignment() throws DrawFailureException {
+        IncrementalDraw draw = draw(unrestricted(1000));
+        Map<Long, Long> before = new HashMap<Long, Long>(draw.getDraw());
+        long receiver = before.get(1L);
+
+        Set<Long> changed = draw.apply(new DrawDelta().addRestriction(1, receiver));
+        AbstractDrawEngineTest.verifyResult(draw.getMembers(), draw.getDraw());
+        assertNotEquals(receiver, (long) draw.getDraw().get(1L));
+        assertTrue(changed.size() <= 3);
+        assertOnlyChanged(before, draw, changed);
+
+        // Not currently assigned, so nothing changes.
+        long other = draw.getDraw().get(1L) == 2L ? 3L : 2L;
+        assertTrue(draw.apply(new DrawDelta().addRestriction(1, other).removeRestriction(1, receiver)).isEmpty());
+    }
+
+    @Test
+    public void impossibleChangeRollsBack() throws DrawFailureException {
+        IncrementalDraw draw = draw(unrestricted(4));
+        Map<Long, Long> before = new HashMap<Long, Long>(draw.getDraw());
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>(draw.getMembers());
+
+        DrawDelta delta = new DrawDelta().removeMember(4).addRestriction(1, 2).addRestriction(1, 3);
+        try {
+            draw.apply(delta);
+            fail("Member 1 can't give to anyone");
+        } catch (DrawFailureException expected) {
+        }
+        assertEquals(before, draw.getDraw());
+        assertEquals(members, draw.getMembers());
+        assertTrue(draw.getMembers().get(1L).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDraw() {
+        Map<Long, Long> draw = new HashMap<Long, Long>();
+        draw.put(1L, 1L);
+        draw.put(2L, 2L);
+        new IncrementalDraw(unrestricted(2), draw);
+    }
+}
@@ -0,0 +1,50 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs all the standard tests, plus a draw deeper than a recursive search could manage.
+ */
+public class IterativeDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new IterativeDrawEngine();
+    }
+
+    /*
+     * 50000 members, no restrictions. Should succeed without exhausting the stack.
+     */
+    @Test
+    public void possibleDeepSearch() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (int i = 1; i <= 50000; i++) {
+            input.put((long) i, new HashSet<Long>());
+        }
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+public class MappedDrawEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Members with spread out ids, each restricted from a few random others.
+     */
+    private static Map<Long, Set<Long>> sparseGroup(int n, int restrictions, long seed) {
+        Random random = new Random(seed);
+        Map<Long, Set<Long>> members = new HashMap<Long, Set<Long>>();
+        for (long id = 1; id <= n; id++) {
+            Set<Long> restricted = new HashSet<Long>();
+            for (int i = 0; i < restrictions; i++) {
+                restricted.add(7L * (1 + random.nextInt(n)));
+            }
+            restricted.remove(7 * id);
+            members.put(7 * id, restricted);
+        }
+        return members;
+    }
+
+    private Path writeGroup(Map<Long, Set<Long>> members) throws IOException {
+        Path path = folder.newFile().toPath();
+        GroupFiles.writeBinary(CompiledGroup.index(members), path);
+        return path;
+    }
+
+    private Map<Long, Long> draw(MappedDrawEngine engine, Path group) throws Exception {
+        Path draw = folder.newFile().toPath();
+        engine.generateDraw(group, draw);
+        return DrawResult.read(draw).asMap();
+    }
+
+    @Test
+    public void drawsLargeSparseGroup() throws Exception {
+        Map<Long, Set<Long>> members = sparseGroup(100000, 4, 1);
+        Map<Long, Long> result = draw(new MappedDrawEngine(), writeGroup(members));
+        AbstractDrawEngineTest.verifyResult(members, result);
+    }
+
+    @Test
+    public void drawsAcrossSegments() throws Exception {
+        // 64 byte segments, so every row and the output span many segments.
+        Map<Long, Set<Long>> members = sparseGroup(500, 20, 2);
+        Map<Long, Long> result = draw(new MappedDrawEngine(RandomSource.unseeded(), 6), writeGroup(members));
+        AbstractDrawEngineTest.verifyResult(members, result);
+    }
+
+    @Test
+    public void drawsTestData() throws Exception {
+        for (String filename : new String[]{"possible_simple.txt", "possible_complex.txt", "pauls_test.txt"}) {
+            Map<Long, Set<Long>> members = TestDataUtils.readTestDataFile(filename);
+            Map<Long, Long> result = draw(new MappedDrawEngine(RandomSource.unseeded(), 6), writeGroup(members));
+            AbstractDrawEngineTest.verifyResult(members, result);
+        }
+    }
+
+    @Test
+    public void repeatsSeededDraws() throws Exception {
+        Path group = writeGroup(sparseGroup(1000, 3, 3));
+        assertEquals(draw(new MappedDrawEngine(RandomSource.seeded(42)), group),
+                draw(new MappedDrawEngine(RandomSource.seeded(42)), group));
+    }
+
+    /*
+     * A failed draw mustn't leave a file that reads as a draw.
+     */
+    @Test
+    public void failsImpossibleGroup() throws Exception {
+        Path group = writeGroup(TestDataUtils.readTestDataFile("impossible_symmetrical.txt"));
+        Path draw = folder.newFile().toPath();
+        try {
+            new MappedDrawEngine().generateDraw(group, draw);
+            fail("Draw should fail as the group is impossible");
+        } catch (DrawFailureException expected) {
+            // Expected
+        }
+        assertFalse(Files.exists(draw));
+    }
+
+    @Test(expected = DrawFailureException.class)
+    public void failsSingleMember() throws Exception {
+        Path group = writeGroup(Collections.singletonMap(1L, Collections.<Long>emptySet()));
+        draw(new MappedDrawEngine(), group);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTextFile() throws Exception {
+        Path group = new File(ClassLoader.getSystemClassLoader().getResource("possible_simple.txt").toURI()).toPath();
+        draw(new MappedDrawEngine(), group);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFile() throws Exception {
+        Path group = writeGroup(sparseGroup(100, 3, 4));
+        byte[] bytes = Files.readAllBytes(group);
+        Files.write(group, Arrays.copyOf(bytes, bytes.length - 4));
+        draw(new MappedDrawEngine(), group);
+    }
+}
@@ -0,0 +1,74 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs all the standard tests, plus checks of the infeasibility diagnostics.
+ */
+public class MatchingDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new MatchingDrawEngine();
+    }
+
+    /*
+     * The blocking set should be named in the failure.
+     */
+    @Test
+    public void impossibleNamesBlockingSet() {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("impossible_not_symmetrical.txt");
+        try {
+            engine.generateDraw(input);
+            fail("Should be impossible as one restricts the other");
+        } catch (DrawFailureException ex) {
+            assertEquals("1 member(s) [1] can only give to 0 member(s) []", ex.getMessage());
+        }
+    }
+
+    /*
+     * No one can give to member 1 in a large group; should fail without an exhaustive search.
+     */
+    @Test(timeout = 10000)
+    public void impossibleManyMembersFailsFast() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (int i = 1; i <= 5000; i++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            if (i != 1) {
+                restrictions.add(1L);
+            }
+            input.put((long) i, restrictions);
+        }
+        try {
+            engine.generateDraw(input);
+            fail("Draw should fail as no one gives m1");
+        } catch (DrawFailureException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("can only give to"));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests, plus checks of the partitioning.
+ */
+public class PartitionedDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new PartitionedDrawEngine();
+    }
+
+    private static Partition partition(Map<Long, Set<Long>> input) {
+        CompiledGroup group = CompiledGroup.index(input);
+        Matching matching = Matching.random(group, new Random(1), new SearchCounters());
+        assertTrue(matching.isPerfect());
+        return Partition.of(group, matching, IndexedDrawEngine.sortByRestrictions(group));
+    }
+
+    /*
+     * 1 can only give to 2, 2 only to 3, so 3 must give to 1.
+     */
+    @Test
+    public void forcedAssignments() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        input.put(1L, new HashSet<Long>(Collections.singleton(3L)));
+        input.put(2L, new HashSet<Long>(Collections.singleton(1L)));
+        input.put(3L, new HashSet<Long>());
+
+        Partition partition = partition(input);
+        assertEquals(3, partition.count());
+        assertEquals(3, partition.forcedCount());
+
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+        assertEquals(Long.valueOf(1), result.get(3L));
+    }
+
+    /*
+     * Two clusters large enough to draw in parallel; the second cluster can't give to the
+     * first, so by counting the first can't give to the second either.
+     */
+    @Test
+    public void clustersDrawnSeparately() throws DrawFailureException {
+        int size = PartitionedDrawEngine.PARALLEL_PART_SIZE;
+        Set<Long> first = new HashSet<Long>();
+        for (long i = 0; i < size; i++) {
+            first.add(i);
+        }
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 0; i < 2 * size; i++) {
+            input.put(i, i < size ? new HashSet<Long>() : first);
+        }
+
+        Partition partition = partition(input);
+        assertEquals(2, partition.count());
+        assertEquals(0, partition.forcedCount());
+
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+        for (long i = 0; i < size; i++) {
+            assertTrue(first.contains(result.get(i)));
+        }
+    }
+
+    @Test
+    public void unrestrictedIsOnePart() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 0; i < 100; i++) {
+            input.put(i, new HashSet<Long>(Collections.singleton((i + 1) % 100)));
+        }
+        assertEquals(1, partition(input).count());
+    }
+}
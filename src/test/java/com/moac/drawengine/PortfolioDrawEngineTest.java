@@ -0,0 +1,61 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs all the standard tests, plus the deadline.
+ */
+public class PortfolioDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new PortfolioDrawEngine();
+    }
+
+    /*
+     * No one can give to member 1, but the searches can only find that out exhaustively.
+     */
+    @Test(timeout = 10000)
+    public void failAfterDeadline() {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (int i = 1; i <= 30; i++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            if (i != 1) {
+                restrictions.add(1L);
+            }
+            input.put((long) i, restrictions);
+        }
+        engine = new PortfolioDrawEngine(200, TimeUnit.MILLISECONDS);
+        try {
+            engine.generateDraw(input);
+            fail("Draw should fail as no one gives m1");
+        } catch (DrawFailureException ex) {
+            assertEquals("No draw found within the deadline of 200 ms.", ex.getMessage());
+        }
+    }
+}
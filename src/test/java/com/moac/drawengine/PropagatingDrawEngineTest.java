@@ -0,0 +1,59 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Runs all the standard tests, plus a large heavily restricted draw.
+ */
+public class PropagatingDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new PropagatingDrawEngine();
+    }
+
+    /*
+     * 300 members split into 3 teams, each member restricting their own team
+     * and 30 random others. Should succeed.
+     */
+    @Test(timeout = 10000)
+    public void possibleHeavilyRestricted() throws DrawFailureException {
+        Random random = new Random(1);
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (int i = 0; i < 300; i++) {
+            Set<Long> restrictions = new HashSet<Long>();
+            for (int j = 0; j < 300; j++) {
+                if (j % 3 == i % 3) restrictions.add((long) j);
+            }
+            while (restrictions.size() < 130) {
+                restrictions.add((long) random.nextInt(300));
+            }
+            input.put((long) i, restrictions);
+        }
+        Map<Long, Long> result = engine.generateDraw(input);
+        verifyResult(input, result);
+    }
+}
@@ -0,0 +1,120 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Seeded draws should be reproducible for every DrawEngine whose result doesn't
+ * depend on timing.
+ */
+public class RandomSourceTest {
+
+    private static List<DrawEngine> seededEngines(RandomSource randomSource) {
+        return Arrays.<DrawEngine>asList(
+                new BasicDrawEngine(RestartPolicy.luby(1), randomSource),
+                new RecursiveDrawEngine(randomSource),
+                new IndexedDrawEngine(randomSource),
+                new IterativeDrawEngine(randomSource),
+                new MatchingDrawEngine(randomSource),
+                new PropagatingDrawEngine(randomSource),
+                new PartitionedDrawEngine(randomSource),
+                new UniformDrawEngine(randomSource),
+                new WeightedDrawEngine(new PairingPenalties(), randomSource),
+                new AdaptiveDrawEngine(randomSource));
+    }
+
+    @Test
+    public void seededDrawsAreIdentical() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        List<DrawEngine> first = seededEngines(RandomSource.seeded(42));
+        List<DrawEngine> second = seededEngines(RandomSource.seeded(42));
+        for (int i = 0; i < first.size(); i++) {
+            Map<Long, Long> draw = first.get(i).generateDraw(input);
+            AbstractDrawEngineTest.verifyResult(input, draw);
+            assertEquals(draw, first.get(i).generateDraw(input));
+            assertEquals(draw, second.get(i).generateDraw(input));
+        }
+    }
+
+    @Test
+    public void sequencesAreReplayed() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        List<DrawEngine> first = seededEngines(RandomSource.sequence(7));
+        List<DrawEngine> second = seededEngines(RandomSource.sequence(7));
+        for (int i = 0; i < first.size(); i++) {
+            for (int draw = 0; draw < 20; draw++) {
+                assertEquals(first.get(i).generateDraw(input), second.get(i).generateDraw(input));
+            }
+        }
+    }
+
+    /*
+     * The complex test group has no single loop, so single loop draws, which mostly
+     * come from joining the loops of a matching, are replayed on another group.
+     */
+    @Test
+    public void cycleSequencesAreReplayed() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("pauls_test.txt");
+        DrawEngine first = new CycleDrawEngine(CycleDrawEngine.SINGLE_CYCLE, 0, TimeUnit.MILLISECONDS,
+                RandomSource.sequence(7));
+        DrawEngine second = new CycleDrawEngine(CycleDrawEngine.SINGLE_CYCLE, 0, TimeUnit.MILLISECONDS,
+                RandomSource.sequence(7));
+        for (int draw = 0; draw < 20; draw++) {
+            Map<Long, Long> result = first.generateDraw(input);
+            AbstractDrawEngineTest.verifyResult(input, result);
+            assertEquals(result, second.generateDraw(input));
+        }
+    }
+
+    /*
+     * A custom source recording its seeds, so each draw can be replayed from its seed.
+     */
+    @Test
+    public void recordedSeedsAreReplayed() throws DrawFailureException {
+        final List<Long> seeds = new ArrayList<Long>();
+        final RandomSource unseeded = RandomSource.unseeded();
+        RandomSource recording = new RandomSource() {
+            @Override
+            public synchronized long nextSeed() {
+                long seed = unseeded.nextSeed();
+                seeds.add(seed);
+                return seed;
+            }
+        };
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        Map<Long, Long> draw = new IndexedDrawEngine(recording).generateDraw(input);
+        assertEquals(1, seeds.size());
+        assertEquals(draw, new IndexedDrawEngine(RandomSource.seeded(seeds.get(0))).generateDraw(input));
+    }
+
+    @Test
+    public void fastRandomIsReproducible() {
+        Random random1 = new FastRandom(123);
+        Random random2 = new FastRandom(123);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(random1.nextLong(), random2.nextLong());
+        }
+        assertEquals(123, ((FastRandom) random1).getSeed());
+    }
+}
@@ -0,0 +1,46 @@
+package com.moac.drawengine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class RestartPolicyTest {
+
+    @Test
+    public void lubySequence() {
+        long[] expected = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+        RestartPolicy policy = RestartPolicy.luby(10);
+        for (int attempt = 0; attempt < expected.length; attempt++) {
+            assertEquals(expected[attempt] * 10, policy.budget(attempt));
+        }
+    }
+
+    @Test
+    public void geometricGrows() {
+        RestartPolicy policy = RestartPolicy.geometric(100, 2);
+        assertEquals(100, policy.budget(0));
+        assertEquals(800, policy.budget(3));
+        assertEquals(Long.MAX_VALUE, policy.budget(100));
+    }
+
+    @Test
+    public void neverRestarts() {
+        assertEquals(Long.MAX_VALUE, RestartPolicy.never().budget(0));
+    }
+}
@@ -0,0 +1,101 @@
+package com.moac.drawengine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests, plus a check that draws are close to uniform.
+ */
+public class UniformDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new UniformDrawEngine();
+    }
+
+    /*
+     * Five members, 1 restricts 2 and 3 restricts 4: every possible draw should be
+     * drawn about equally often. Seeded, so the outcome is fixed.
+     */
+    @Test
+    public void drawsAreUniform() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 1; i <= 5; i++) {
+            input.put(i, new HashSet<Long>());
+        }
+        input.get(1L).add(2L);
+        input.get(3L).add(4L);
+
+        List<Map<Long, Long>> possible = new ArrayList<Map<Long, Long>>();
+        permute(input, new ArrayList<Long>(input.keySet()), 0, possible);
+        Map<Map<Long, Long>, Integer> counts = new HashMap<Map<Long, Long>, Integer>();
+        for (Map<Long, Long> draw : possible) {
+            counts.put(draw, 0);
+        }
+
+        DrawEngine uniform = new UniformDrawEngine(RandomSource.sequence(11));
+        int samples = 200 * possible.size();
+        for (int i = 0; i < samples; i++) {
+            Map<Long, Long> draw = uniform.generateDraw(input);
+            counts.put(draw, counts.get(draw) + 1);
+        }
+
+        // Chi-squared against uniform, at a significance of 0.001.
+        double expected = (double) samples / possible.size();
+        double chiSquared = 0;
+        for (int count : counts.values()) {
+            chiSquared += (count - expected) * (count - expected) / expected;
+        }
+        int df = possible.size() - 1;
+        double z = 3.09;
+        double critical = df * Math.pow(1 - 2.0 / (9 * df) + z * Math.sqrt(2.0 / (9 * df)), 3);
+        assertTrue(chiSquared + " > " + critical, chiSquared < critical);
+    }
+
+    /**
+     * Collects every valid draw of the members by permuting the receivers.
+     */
+    private static void permute(Map<Long, Set<Long>> input, List<Long> receivers, int depth,
+                                List<Map<Long, Long>> draws) {
+        List<Long> givers = new ArrayList<Long>(input.keySet());
+        if (depth == receivers.size()) {
+            Map<Long, Long> draw = new HashMap<Long, Long>();
+            for (int i = 0; i < givers.size(); i++) {
+                Long giver = givers.get(i);
+                Long receiver = receivers.get(i);
+                if (giver.equals(receiver) || input.get(giver).contains(receiver)) {
+                    return;
+                }
+                draw.put(giver, receiver);
+            }
+            draws.add(draw);
+            return;
+        }
+        for (int i = depth; i < receivers.size(); i++) {
+            Collections.swap(receivers, depth, i);
+            permute(input, receivers, depth + 1, draws);
+            Collections.swap(receivers, depth, i);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.moac.drawengine;
+
+import com.moac.drawengine.test.TestDataUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/*
+ * Copyright 2014 Peter Tackage
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Runs all the standard tests with no penalties, plus penalised draws.
+ */
+public class WeightedDrawEngineTest extends AbstractDrawEngineTest {
+
+    @Before
+    public void setUp() {
+        engine = new WeightedDrawEngine();
+    }
+
+    @Test
+    public void historyIsWeightedByRecency() {
+        List<Map<Long, Long>> draws = new ArrayList<Map<Long, Long>>();
+        draws.add(Collections.singletonMap(1L, 2L));
+        draws.add(Collections.singletonMap(1L, 3L));
+        draws.add(Collections.singletonMap(1L, 2L));
+        PairingPenalties penalties = PairingPenalties.fromHistory(draws);
+        assertEquals(4, penalties.get(1L, 2L));
+        assertEquals(2, penalties.get(1L, 3L));
+        assertEquals(0, penalties.get(2L, 1L));
+    }
+
+    @Test
+    public void avoidsPreviousYears() throws DrawFailureException {
+        Map<Long, Set<Long>> input = TestDataUtils.readTestDataFile("possible_complex.txt");
+        List<Map<Long, Long>> draws = new ArrayList<Map<Long, Long>>();
+        draws.add(new MatchingDrawEngine().generateDraw(input));
+        PairingPenalties penalties = PairingPenalties.fromHistory(draws);
+
+        Map<Long, Long> draw = new WeightedDrawEngine(penalties).generateDraw(input);
+        verifyResult(input, draw);
+        assertEquals(minimumPenalty(input, penalties), penalties.total(draw));
+    }
+
+    /*
+     * Three members can only be drawn in two ways, both used before, so the older one
+     * is repeated.
+     */
+    @Test
+    public void repeatsTheOldestWhenForced() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 1; i <= 3; i++) {
+            input.put(i, new HashSet<Long>());
+        }
+        Map<Long, Long> older = new HashMap<Long, Long>();
+        older.put(1L, 2L);
+        older.put(2L, 3L);
+        older.put(3L, 1L);
+        Map<Long, Long> newer = new HashMap<Long, Long>();
+        newer.put(1L, 3L);
+        newer.put(3L, 2L);
+        newer.put(2L, 1L);
+
+        Map<Long, Long> draw = new WeightedDrawEngine(PairingPenalties.fromHistory(Arrays.asList(older, newer)))
+                .generateDraw(input);
+        assertEquals(older, draw);
+    }
+
+    @Test
+    public void matchesBruteForce() throws DrawFailureException {
+        Random random = new Random(21);
+        WeightedDrawEngine weighted = new WeightedDrawEngine(new PairingPenalties(), RandomSource.seeded(21));
+        for (int trial = 0; trial < 300; trial++) {
+            int n = 2 + random.nextInt(6);
+            Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+            PairingPenalties penalties = new PairingPenalties();
+            for (long giver = 1; giver <= n; giver++) {
+                Set<Long> restricted = new HashSet<Long>();
+                for (long receiver = 1; receiver <= n; receiver++) {
+                    if (receiver != giver) {
+                        int roll = random.nextInt(6);
+                        if (roll == 0) {
+                            restricted.add(receiver);
+                        } else if (roll < 4) {
+                            penalties.set(giver, receiver, 1 + random.nextInt(5));
+                        }
+                    }
+                }
+                input.put(giver, restricted);
+            }
+
+            long minimum = minimumPenalty(input, penalties);
+            try {
+                Map<Long, Long> draw = weighted.generateDraw(input, penalties);
+                verifyResult(input, draw);
+                assertEquals(minimum, penalties.total(draw));
+            } catch (DrawFailureException ex) {
+                assertEquals(Long.MAX_VALUE, minimum);
+            }
+        }
+    }
+
+    /*
+     * Five years of history leave plenty of pairs free in a large group, so the draw
+     * shouldn't need to repeat any.
+     */
+    @Test(timeout = 10000)
+    public void largeGroupAvoidsAllHistory() throws DrawFailureException {
+        Map<Long, Set<Long>> input = new HashMap<Long, Set<Long>>();
+        for (long i = 0; i < 20000; i++) {
+            input.put(i, new HashSet<Long>(Collections.singleton(i ^ 1)));
+        }
+        List<Map<Long, Long>> draws = new ArrayList<Map<Long, Long>>();
+        MatchingDrawEngine matching = new MatchingDrawEngine();
+        for (int year = 0; year < 5; year++) {
+            draws.add(matching.generateDraw(input));
+        }
+        PairingPenalties penalties = PairingPenalties.fromHistory(draws);
+
+        Map<Long, Long> draw = new WeightedDrawEngine(penalties).generateDraw(input);
+        verifyResult(input, draw);
+        assertEquals(0, penalties.total(draw));
+    }
+
+    /**
+     * @return The least total penalty of any draw, or Long.MAX_VALUE if there is none.
+     */
+    private static long minimumPenalty(Map<Long, Set<Long>> input, PairingPenalties penalties) {
+        List<Long> members = new ArrayList<Long>(input.keySet());
+        return minimumPenalty(input, penalties, members, 0, new HashSet<Long>(), 0);
+    }
+
+    private static long minimumPenalty(Map<Long, Set<Long>> input, PairingPenalties penalties, List<Long> members,
+                                       int giver, Set<Long> taken, long total) {
+        if (giver == members.size()) {
+            return total;
+        }
+        long best = Long.MAX_VALUE;
+        Long from = members.get(giver);
+        for (Long to : members) {
+            if (!to.equals(from) && !taken.contains(to) && !input.get(from).contains(to)) {
+                taken.add(to);
+                best = Math.min(best, minimumPenalty(input, penalties, members, giver + 1, taken,
+                        total + penalties.get(from, to)));
+                taken.remove(to);
+            }
+        }
+        return best;
+    }
+}